@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Loads the Lox programs under resources/benchmark and runs them through the front end.
+final class BenchmarkPrograms {
+
+    private static final PrintStream NULL_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+    private static final PrintStream STANDARD_OUTPUT = System.out;
+
+    static String source(String program){
+        try (InputStream input = BenchmarkPrograms.class.getResourceAsStream("/benchmark/" + program + ".lox")){
+            if (input == null){
+                throw new IllegalArgumentException("No benchmark program named '" + program + "'.");
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException error){
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    static TokenBuffer scan(String source){
+        return new Scanner(source).scanTokens();
+    }
+
+    static List<Stmt> parse(String source){
+        List<Stmt> statements = new Parser(scan(source)).parse();
+        check();
+        return statements;
+    }
+
+    static List<Stmt> resolve(String source){
+        List<Stmt> statements = parse(source);
+        new Resolver().resolve(statements);
+        check();
+        return statements;
+    }
+
+    // What the engines get from Lox.run(): the resolved program, optimized.
+    static List<Stmt> compile(String source){
+        return new Optimizer().optimize(resolve(source));
+    }
+
+    // Benchmarks measure the engines, not the console.
+    static void silenceOutput(){
+        System.setOut(NULL_OUTPUT);
+    }
+
+    static void restoreOutput(){
+        System.setOut(STANDARD_OUTPUT);
+    }
+
+    private static void check(){
+        if (Lox.hadError){
+            throw new IllegalStateException("Benchmark program has errors.");
+        }
+    }
+
+    private BenchmarkPrograms(){ }
+}
@@ -0,0 +1,79 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures each stage of the pipeline on its own: every benchmark gets the output of the previous stages,
+// prepared once per trial.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"arithmetic", "fib", "binary_trees", "equality", "instantiation", "invocation",
+            "method_call", "properties", "string_equality", "trees", "zoo"})
+    public String program;
+
+    private String source;
+    private TokenBuffer tokens;
+    private List<Stmt> statements;
+    private List<Stmt> optimized;
+
+    @Setup
+    public void setUp(){
+        source = BenchmarkPrograms.source(program);
+        tokens = BenchmarkPrograms.scan(source);
+        statements = BenchmarkPrograms.resolve(source);
+        optimized = new Optimizer().optimize(statements);
+        BenchmarkPrograms.silenceOutput();
+    }
+
+    @TearDown
+    public void tearDown(){
+        BenchmarkPrograms.restoreOutput();
+    }
+
+    @Benchmark
+    public TokenBuffer scan(){
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse(){
+        return new Parser(tokens).parse();
+    }
+
+    // Resolution only overwrites the addresses stored on the nodes, so the same trees can be resolved again.
+    @Benchmark
+    public List<Stmt> resolve(){
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    // The optimizer builds new lists and nodes for what it changes, so it leaves the resolved trees as they were.
+    @Benchmark
+    public List<Stmt> optimize(){
+        return new Optimizer().optimize(statements);
+    }
+
+    @Benchmark
+    public void interpret(){
+        new Interpreter().interpret(optimized);
+    }
+}
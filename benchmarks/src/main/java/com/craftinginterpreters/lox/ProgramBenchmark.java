@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Runs each program of the classic Lox benchmark suite on each engine. The program is scanned, parsed, resolved
+// and optimized once; every operation creates a fresh engine (so globals start empty) and interprets it.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProgramBenchmark {
+
+    @Param({"arithmetic", "fib", "binary_trees", "equality", "instantiation", "invocation",
+            "method_call", "properties", "string_equality", "trees", "zoo"})
+    public String program;
+
+    @Param({"tree", "closure", "vm"})
+    public String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp(){
+        statements = BenchmarkPrograms.compile(BenchmarkPrograms.source(program));
+        BenchmarkPrograms.silenceOutput();
+    }
+
+    @TearDown
+    public void tearDown(){
+        BenchmarkPrograms.restoreOutput();
+        if (Lox.hadRuntimeError){
+            throw new IllegalStateException("Benchmark program '" + program + "' failed at runtime.");
+        }
+    }
+
+    @Benchmark
+    public void run(){
+        Lox.newEngine(engine).interpret(statements);
+    }
+}
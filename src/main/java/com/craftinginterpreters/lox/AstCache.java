@@ -0,0 +1,722 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Persistent cache of resolved syntax trees, so an unchanged file skips the Scanner, Parser and Resolver. Entries
+// are keyed by the SHA-256 of the source and hold the statements in a compact binary form, together with the
+// resolver's depths, slots and numeric flags and the line of every node and token. The nodes read back get new ids.
+// The directory is $JLOX_CACHE_DIR, or ~/.cache/jlox.
+// Any problem reading or writing an entry just counts as a miss: the cache is never needed for correctness.
+// Each edit of a file makes a new entry, so storing one prunes the least recently used beyond MAX_ENTRIES.
+class AstCache {
+    private static final int MAGIC = 0x4c4f5843;   // "LOXC"
+    private static final int VERSION = 9;           // Bump whenever the format, the tree or its resolution changes
+    private static final int MAX_ENTRIES = 256;
+
+    // Node tags. 0 stands for a missing (null) node.
+    private static final byte NONE = 0;
+    private static final byte ASSIGN = 1, BINARY = 2, CALL = 3, GET = 4, GROUPING = 5, LITERAL = 6, LOGICAL = 7,
+            SET = 8, SUPER = 9, THIS = 10, UNARY = 11, VARIABLE = 12;
+    private static final byte BLOCK = 20, CLASS = 21, EXPRESSION = 22, FUNCTION = 23, IF = 24, IMPORT = 25,
+            PRINT = 26, RETURN = 27, VAR = 28, WHILE = 29;
+
+    // Value tags, for literals.
+    private static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+    private static final TokenType[] tokenTypes = TokenType.values();
+
+    private final Path directory;
+
+    AstCache(){
+        String configured = System.getenv("JLOX_CACHE_DIR");
+        this.directory = configured != null
+                ? Paths.get(configured)
+                : Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+    }
+
+    String key(CharSequence source){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException error){
+            throw new IllegalStateException(error);
+        }
+
+        byte[] chunk = new byte[8192];
+        int length = source.length();
+        for (int i = 0; i < length; ){
+            int n = 0;
+            for (; n < chunk.length && i < length; i++){
+                char c = source.charAt(i);
+                chunk[n++] = (byte) (c >> 8);
+                chunk[n++] = (byte) c;
+            }
+            digest.update(chunk, 0, n);
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()){
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    // The cached statements, or null on a miss.
+    List<Stmt> load(String key){
+        Path file = directory.resolve(key + ".ast");
+        if (!Files.isRegularFile(file)) return null;
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            List<Stmt> statements = new Reader(in).statements();
+
+            touch(file);
+            return statements;
+        } catch (IOException | RuntimeException | StackOverflowError error){
+            // A tree nested deeper than the reader can recurse is a miss too.
+            return null;
+        }
+    }
+
+    void store(String key, List<Stmt> statements){
+        Path temporary = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            new Writer(out).statements(statements);
+            out.flush();
+
+            // Written aside and moved into place, so concurrent runs never see a partial entry.
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temporary, bytes.toByteArray());
+            Files.move(temporary, directory.resolve(key + ".ast"), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            prune();
+        } catch (IOException | RuntimeException | StackOverflowError error){
+            // Not cached this time.
+        } finally {
+            deleteQuietly(temporary);   // Only left when the write or the move failed
+        }
+    }
+
+    // Deletes the least recently used entries beyond MAX_ENTRIES. Runs that prune at the same time may delete an
+    // entry twice, or one another just stored, which only costs a miss.
+    private void prune() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.ast")){
+            for (Path file : files){
+                entries.add(file);
+            }
+        }
+        if (entries.size() <= MAX_ENTRIES) return;
+
+        Map<Path, Long> used = new HashMap<>();
+        for (Path file : entries){
+            try {
+                used.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException error){
+                used.put(file, 0L);     // Gone already
+            }
+        }
+        entries.sort(Comparator.comparing(used::get));
+        for (Path file : entries.subList(0, entries.size() - MAX_ENTRIES)){
+            deleteQuietly(file);
+        }
+    }
+
+    // Marks an entry as recently used, for prune(). A cache that can't be written to still serves hits.
+    private static void touch(Path file){
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException error){
+            // Pruned as if unused
+        }
+    }
+
+    private static void deleteQuietly(Path file){
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException error){
+            // Left behind; prune() or the user can remove it later.
+        }
+    }
+
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final DataOutputStream out;
+        // A string is written in full the first time and by index afterwards.
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Writer(DataOutputStream out){
+            this.out = out;
+        }
+
+        void statements(List<Stmt> statements){
+            statements(statements.toArray(new Stmt[0]));
+        }
+
+        private void statements(Stmt[] statements){
+            write(statements.length);
+            for (Stmt statement : statements){
+                statement(statement);
+            }
+        }
+
+        // A node's line, and an expression's numeric flag, follow its children. Its id isn't stored: the Reader
+        // gives it a new one, unique in the process that reads it.
+        private void statement(Stmt stmt){
+            if (stmt == null){
+                tag(NONE);
+            } else {
+                stmt.accept(this);
+                write(stmt.line);
+            }
+        }
+
+        private void expressions(Expr[] expressions){
+            write(expressions.length);
+            for (Expr expression : expressions){
+                expression(expression);
+            }
+        }
+
+        private void expression(Expr expr){
+            if (expr == null){
+                tag(NONE);
+            } else {
+                expr.accept(this);
+                fields(expr);
+            }
+        }
+
+        private void fields(Expr expr){
+            write(expr.line);
+            write(expr.numeric ? 1 : 0);
+        }
+
+        private void tokens(Token[] tokens){
+            write(tokens.length);
+            for (Token token : tokens){
+                token(token);
+            }
+        }
+
+        // The symbol of a name is interned again from its lexeme when read.
+        private void token(Token token){
+            tag((byte) token.type.ordinal());
+            write(token.line);
+            string(token.lexeme);
+            value(token.literal);
+        }
+
+        private void value(Object value){
+            if (value == null){
+                tag(NIL);
+            } else if (value instanceof Boolean){
+                tag((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double){
+                tag(NUMBER);
+                try {
+                    out.writeDouble((Double) value);
+                } catch (IOException error){
+                    throw new IllegalStateException(error);
+                }
+            } else {
+                tag(STRING);
+                string((String) value);
+            }
+        }
+
+        private void string(String string){
+            Integer index = strings.get(string);
+            if (index != null){
+                write(index);
+                return;
+            }
+
+            write(strings.size());
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            write(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException error){
+                throw new IllegalStateException(error);
+            }
+        }
+
+        private void tag(byte tag){
+            try {
+                out.writeByte(tag);
+            } catch (IOException error){
+                throw new IllegalStateException(error);
+            }
+        }
+
+        private void write(int value){
+            try {
+                out.writeInt(value);
+            } catch (IOException error){
+                throw new IllegalStateException(error);
+            }
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr){
+            tag(ASSIGN);
+            token(expr.name);
+            expression(expr.value);
+            write(expr.depth);
+            write(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr){
+            chain(expr);
+            return null;
+        }
+
+        // A chain of operators down the left is written in a loop, in the order recursion would write it: the tags
+        // from the outermost operator in, the innermost left operand, then each operator's token and right operand,
+        // and its fields, from the innermost out. expression() writes the fields of the outermost.
+        private void chain(Expr expr){
+            List<Expr> spine = OperatorChain.spine(expr);
+            for (Expr operator : spine){
+                tag(operator instanceof Expr.Binary ? BINARY : LOGICAL);
+            }
+            expression(OperatorChain.left(spine.get(spine.size() - 1)));
+            for (int i = spine.size() - 1; i >= 0; i--){
+                Expr operator = spine.get(i);
+                token(operator instanceof Expr.Binary
+                        ? ((Expr.Binary) operator).operator
+                        : ((Expr.Logical) operator).operator);
+                expression(OperatorChain.right(operator));
+                if (i > 0) fields(operator);
+            }
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr){
+            tag(CALL);
+            expression(expr.callee);
+            token(expr.paren);
+            expressions(expr.arguments);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr){
+            tag(GET);
+            expression(expr.object);
+            token(expr.name);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr){
+            tag(GROUPING);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr){
+            tag(LITERAL);
+            value(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr){
+            chain(expr);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr){
+            tag(SET);
+            expression(expr.object);
+            token(expr.name);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitSuperExpr(Expr.Super expr){
+            tag(SUPER);
+            token(expr.keyword);
+            token(expr.method);
+            write(expr.depth);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr){
+            tag(THIS);
+            token(expr.keyword);
+            write(expr.depth);
+            write(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr){
+            tag(UNARY);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr){
+            tag(VARIABLE);
+            token(expr.name);
+            write(expr.depth);
+            write(expr.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt){
+            tag(BLOCK);
+            statements(stmt.statements);
+            write(stmt.scoped ? 1 : 0);
+            write(stmt.slots);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt){
+            tag(CLASS);
+            token(stmt.name);
+            expression(stmt.superclass);
+            statements(stmt.methods);
+            write(stmt.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt){
+            tag(EXPRESSION);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt){
+            tag(FUNCTION);
+            token(stmt.name);
+            tokens(stmt.params);
+            statements(stmt.body);
+            write(stmt.slot);
+            write(stmt.frameSize);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt){
+            tag(IF);
+            expression(stmt.condition);
+            statement(stmt.thenBranch);
+            statement(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitImportStmt(Stmt.Import stmt){
+            tag(IMPORT);
+            token(stmt.keyword);
+            token(stmt.path);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt){
+            tag(PRINT);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt){
+            tag(RETURN);
+            token(stmt.keyword);
+            expression(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt){
+            tag(VAR);
+            token(stmt.name);
+            expression(stmt.initializer);
+            write(stmt.slot);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt){
+            tag(WHILE);
+            expression(stmt.condition);
+            statement(stmt.body);
+            return null;
+        }
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final NodeIds ids = new NodeIds();
+
+        Reader(DataInputStream in){
+            this.in = in;
+        }
+
+        List<Stmt> statements() throws IOException {
+            int count = in.readInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++){
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Stmt[] statementArray() throws IOException {
+            Stmt[] statements = new Stmt[in.readInt()];
+            for (int i = 0; i < statements.length; i++){
+                statements[i] = statement();
+            }
+            return statements;
+        }
+
+        private Stmt.Function[] methods() throws IOException {
+            Stmt.Function[] methods = new Stmt.Function[in.readInt()];
+            for (int i = 0; i < methods.length; i++){
+                methods[i] = (Stmt.Function) statement();
+            }
+            return methods;
+        }
+
+        private Stmt statement() throws IOException {
+            byte tag = in.readByte();
+            if (tag == NONE) return null;
+
+            Stmt stmt = statement(tag);
+            stmt.id = ids.next();
+            stmt.line = in.readInt();
+            return stmt;
+        }
+
+        private Stmt statement(byte tag) throws IOException {
+            switch (tag){
+                case BLOCK: {
+                    Stmt.Block stmt = new Stmt.Block(statementArray());
+                    stmt.scoped = in.readInt() != 0;
+                    stmt.slots = in.readInt();
+                    return stmt;
+                }
+                case CLASS: {
+                    Token name = token();
+                    Expr.Variable superclass = (Expr.Variable) expression();
+                    Stmt.Class stmt = new Stmt.Class(name, superclass, methods());
+                    stmt.slot = in.readInt();
+                    return stmt;
+                }
+                case EXPRESSION: return new Stmt.Expression(expression());
+                case FUNCTION: {
+                    Token name = token();
+                    Token[] params = tokens();
+                    Stmt.Function stmt = new Stmt.Function(name, params, statementArray());
+                    stmt.slot = in.readInt();
+                    stmt.frameSize = in.readInt();
+                    return stmt;
+                }
+                case IF: {
+                    Expr condition = expression();
+                    Stmt thenBranch = statement();
+                    return new Stmt.If(condition, thenBranch, statement());
+                }
+                case IMPORT: {
+                    Token keyword = token();
+                    return new Stmt.Import(keyword, token());
+                }
+                case PRINT: return new Stmt.Print(expression());
+                case RETURN: {
+                    Token keyword = token();
+                    return new Stmt.Return(keyword, expression());
+                }
+                case VAR: {
+                    Token name = token();
+                    Stmt.Var stmt = new Stmt.Var(name, expression());
+                    stmt.slot = in.readInt();
+                    return stmt;
+                }
+                case WHILE: {
+                    Expr condition = expression();
+                    return new Stmt.While(condition, statement());
+                }
+            }
+            throw new IOException("Unknown statement tag " + tag + ".");
+        }
+
+        private Expr[] expressions() throws IOException {
+            Expr[] expressions = new Expr[in.readInt()];
+            for (int i = 0; i < expressions.length; i++){
+                expressions[i] = expression();
+            }
+            return expressions;
+        }
+
+        private Expr expression() throws IOException {
+            byte tag = in.readByte();
+            if (tag == NONE) return null;
+            if (tag == BINARY || tag == LOGICAL) return chain(tag);
+            return fields(expression(tag));
+        }
+
+        private Expr fields(Expr expr) throws IOException {
+            expr.id = ids.next();
+            expr.line = in.readInt();
+            expr.numeric = in.readInt() != 0;
+            return expr;
+        }
+
+        // A chain of operators down the left, read in a loop, the way the Writer wrote it.
+        private Expr chain(byte tag) throws IOException {
+            List<Byte> operators = new ArrayList<>();
+            for (; tag == BINARY || tag == LOGICAL; tag = in.readByte()){
+                operators.add(tag);
+            }
+
+            Expr expr = fields(expression(tag));
+            for (int i = operators.size() - 1; i >= 0; i--){
+                Token operator = token();
+                Expr right = expression();
+                expr = fields(operators.get(i) == BINARY
+                        ? new Expr.Binary(expr, operator, right)
+                        : new Expr.Logical(expr, operator, right));
+            }
+            return expr;
+        }
+
+        private Expr expression(byte tag) throws IOException {
+            switch (tag){
+                case ASSIGN: {
+                    Token name = token();
+                    Expr.Assign expr = new Expr.Assign(name, expression());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    return expr;
+                }
+                case CALL: {
+                    Expr callee = expression();
+                    Token paren = token();
+                    return new Expr.Call(callee, paren, expressions());
+                }
+                case GET: {
+                    Expr object = expression();
+                    return new Expr.Get(object, token());
+                }
+                case GROUPING: return new Expr.Grouping(expression());
+                case LITERAL: return new Expr.Literal(value());
+                case SET: {
+                    Expr object = expression();
+                    Token name = token();
+                    return new Expr.Set(object, name, expression());
+                }
+                case SUPER: {
+                    Token keyword = token();
+                    Expr.Super expr = new Expr.Super(keyword, token());
+                    expr.depth = in.readInt();
+                    return expr;
+                }
+                case THIS: {
+                    Expr.This expr = new Expr.This(token());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    return expr;
+                }
+                case UNARY: {
+                    Token operator = token();
+                    return new Expr.Unary(operator, expression());
+                }
+                case VARIABLE: {
+                    Expr.Variable expr = new Expr.Variable(token());
+                    expr.depth = in.readInt();
+                    expr.slot = in.readInt();
+                    return expr;
+                }
+            }
+            throw new IOException("Unknown expression tag " + tag + ".");
+        }
+
+        private Token[] tokens() throws IOException {
+            Token[] tokens = new Token[in.readInt()];
+            for (int i = 0; i < tokens.length; i++){
+                tokens[i] = token();
+            }
+            return tokens;
+        }
+
+        private Token token() throws IOException {
+            TokenType type = tokenTypes[in.readByte()];
+            int line = in.readInt();
+            String lexeme = string();
+            Object literal = value();
+
+            switch (type){
+                case IDENTIFIER:
+                case THIS:
+                case SUPER:
+                    return new Token(type, Symbol.of(lexeme), line);
+            }
+            return new Token(type, lexeme, literal, line);
+        }
+
+        private Object value() throws IOException {
+            byte tag = in.readByte();
+            switch (tag){
+                case NIL: return null;
+                case FALSE: return false;
+                case TRUE: return true;
+                case NUMBER: return in.readDouble();
+                case STRING: return string();
+            }
+            throw new IOException("Unknown value tag " + tag + ".");
+        }
+
+        private String string() throws IOException {
+            int index = in.readInt();
+            if (index < strings.size()) return strings.get(index);
+
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.craftinginterpreters.lox;
+
+// Arithmetic and comparison node for the ClosureCompiler that specializes itself on the operand types it sees.
+// It starts uninitialized, settles on numbers (or strings, for '+') after its first evaluation and runs only
+// that guarded fast path from then on. When a guard fails it deoptimizes to the generic path for good.
+// On numbers, an operand the Resolver marked numeric is evaluated unboxed, and an arithmetic node handed over
+// unboxed computes its result unboxed too: a chain of arithmetic boxes only the number that leaves it.
+// The node changes its own state rather than replacing itself in its parent: the parent is a lambda that holds
+// it in a captured final variable, so there is no child slot to write a specialized node into.
+abstract class BinaryNode implements ExprNode {
+
+    private enum State { UNINITIALIZED, NUMBER, STRING, GENERIC }
+
+    // The operation on two Lox strings, for the operators that have one.
+    private interface Strings {
+        Object apply(Object left, Object right);
+    }
+
+    final ExprNode left;
+    final ExprNode right;
+    final Numeric leftNumeric;         // null when the operand is evaluated boxed
+    final Numeric rightNumeric;
+    final Token operator;
+    private final Strings strings;     // null when strings take the generic path
+    State state = State.UNINITIALIZED;
+
+    BinaryNode(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric, Token operator){
+        this(left, leftNumeric, right, rightNumeric, operator, null);
+    }
+
+    private BinaryNode(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric, Token operator,
+                       Strings strings){
+        this.left = left;
+        this.right = right;
+        this.leftNumeric = leftNumeric;
+        this.rightNumeric = rightNumeric;
+        this.operator = operator;
+        this.strings = strings;
+    }
+
+    abstract Object numbers(double left, double right);
+
+    // Full Lox semantics, including the type errors.
+    Object generic(Object left, Object right){
+        Interpreter.checkNumberOperands(operator, left, right);
+        return numbers((double)left, (double)right);
+    }
+
+    @Override
+    public final Object evaluate(Environment environment){
+        if (state == State.NUMBER){
+            double a;
+            if (leftNumeric != null){
+                a = leftNumeric.evaluateDouble(environment);
+            } else {
+                Object value = left.evaluate(environment);
+                if (!(value instanceof Double)) return deoptimize(value, right.evaluate(environment));
+                a = (double)value;
+            }
+            double b;
+            if (rightNumeric != null){
+                b = rightNumeric.evaluateDouble(environment);
+            } else {
+                Object value = right.evaluate(environment);
+                if (!(value instanceof Double)) return deoptimize(a, value);
+                b = (double)value;
+            }
+            return numbers(a, b);
+        }
+
+        Object a = left.evaluate(environment);
+        Object b = right.evaluate(environment);
+
+        switch (state){
+            case STRING:
+                if (Rope.isString(a) && Rope.isString(b)) return strings.apply(a, b);
+                break;
+            case GENERIC:
+                return generic(a, b);
+            case UNINITIALIZED:
+                return specialize(a, b);
+        }
+
+        // Type guard failed
+        return deoptimize(a, b);
+    }
+
+    // Leaves the fast path for good, once a guard has failed on these operands.
+    Object deoptimize(Object a, Object b){
+        state = State.GENERIC;
+        return generic(a, b);
+    }
+
+    private Object specialize(Object a, Object b){
+        if (a instanceof Double && b instanceof Double){
+            state = State.NUMBER;
+            return numbers((double)a, (double)b);
+        }
+        if (strings != null && Rope.isString(a) && Rope.isString(b)){
+            state = State.STRING;
+            return strings.apply(a, b);
+        }
+
+        state = State.GENERIC;
+        return generic(a, b);
+    }
+
+    // The numeric views are the operands to evaluate unboxed, or null.
+    static ExprNode create(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric,
+                           Token operator){
+        switch (operator.type){
+            case GREATER:
+                return new BinaryNode(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    Object numbers(double a, double b) { return a > b; }
+                };
+            case GREATER_EQUAL:
+                return new BinaryNode(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    Object numbers(double a, double b) { return a >= b; }
+                };
+            case LESS:
+                return new BinaryNode(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    Object numbers(double a, double b) { return a < b; }
+                };
+            case LESS_EQUAL:
+                return new BinaryNode(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    Object numbers(double a, double b) { return a <= b; }
+                };
+            case MINUS:
+                return new Arithmetic(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    double apply(double a, double b) { return a - b; }
+                };
+            case SLASH:
+                return new Arithmetic(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    double apply(double a, double b) { return a / b; }
+                };
+            case STAR:
+                return new Arithmetic(left, leftNumeric, right, rightNumeric, operator) {
+                    @Override
+                    double apply(double a, double b) { return a * b; }
+                };
+            case PLUS:
+                return new Add(left, leftNumeric, right, rightNumeric, operator);
+        }
+
+        // Not a specializable operator
+        return null;
+    }
+
+    // An operator whose fast path yields a number. Its parent only evaluates it unboxed when the Resolver marked
+    // it numeric, so evaluateDouble() can count on the generic path producing a number too, if it doesn't fail.
+    private abstract static class Arithmetic extends BinaryNode implements Numeric {
+
+        Arithmetic(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric, Token operator){
+            super(left, leftNumeric, right, rightNumeric, operator);
+        }
+
+        Arithmetic(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric, Token operator,
+                   Strings strings){
+            super(left, leftNumeric, right, rightNumeric, operator, strings);
+        }
+
+        abstract double apply(double left, double right);
+
+        @Override
+        final Object numbers(double left, double right){
+            return apply(left, right);
+        }
+
+        @Override
+        public final double evaluateDouble(Environment environment){
+            if (state != State.NUMBER) return (double)evaluate(environment);
+
+            double a;
+            if (leftNumeric != null){
+                a = leftNumeric.evaluateDouble(environment);
+            } else {
+                Object value = left.evaluate(environment);
+                if (!(value instanceof Double)) return (double)deoptimize(value, right.evaluate(environment));
+                a = (double)value;
+            }
+            double b;
+            if (rightNumeric != null){
+                b = rightNumeric.evaluateDouble(environment);
+            } else {
+                Object value = right.evaluate(environment);
+                if (!(value instanceof Double)) return (double)deoptimize(a, value);
+                b = (double)value;
+            }
+            return apply(a, b);
+        }
+    }
+
+    private static class Add extends Arithmetic {
+
+        Add(ExprNode left, Numeric leftNumeric, ExprNode right, Numeric rightNumeric, Token operator){
+            super(left, leftNumeric, right, rightNumeric, operator, Rope::concat);
+        }
+
+        @Override
+        double apply(double left, double right){
+            return left + right;
+        }
+
+        @Override
+        Object generic(Object left, Object right){
+            if (left instanceof Double && right instanceof Double){
+                return (double)left + (double)right;
+            }
+            if (Rope.isString(left) && Rope.isString(right)){
+                return Rope.concat(left, right);
+            }
+            throw new RuntimeError(operator, "Operands must be two numbers or two strings");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class Chunk {
+    static final int MAX_OPERAND = 0xffff;
+
+    byte[] code = new byte[32];
+    int[] lines = new int[32];
+    int count = 0;
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+    private final Map<Object, Integer> constantIndexes = new HashMap<>();
+
+    void write(int value, int line){
+        if (count == code.length){
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) value;
+        lines[count] = line;
+        count++;
+    }
+
+    void writeShort(int value, int line){
+        write((value >> 8) & 0xff, line);
+        write(value & 0xff, line);
+    }
+
+    int readShort(int offset){
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    void patchShort(int offset, int value){
+        code[offset] = (byte) ((value >> 8) & 0xff);
+        code[offset + 1] = (byte) (value & 0xff);
+    }
+
+    // Returns -1 when the pool is full.
+    int addConstant(Object value){
+        Integer index = constantIndexes.get(value);
+        if (index != null) return index;
+
+        if (constantCount > MAX_OPERAND) return -1;
+        if (constantCount == constants.length){
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantIndexes.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,557 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Engine that compiles each resolved statement once into a tree of ExprNode/StmtNode closures and then runs them.
+// Operators, resolved variable addresses and branch shapes are fixed at compile time, so execution never
+// switches on token types or consults the resolution maps.
+public class ClosureCompiler implements Engine, Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+
+    final Environment globals = new Environment();
+
+    ClosureCompiler(){
+        Natives.define(globals);
+    }
+
+    @Override
+    public void interpret(List<Stmt> statements){
+        StmtNode[] program = compile(statements.toArray(new Stmt[0]));
+        int current = 0;
+        try {
+            for (; current < program.length; current++){
+                program[current].execute(globals);
+            }
+        }
+        catch (RuntimeError error){
+            Lox.runTimeError(error);
+        }
+        catch (StackOverflowError error){
+            // Evaluation recurses down an operator chain, so a long enough one can run out of stack outside any call.
+            Lox.runTimeError(new RuntimeError(statements.get(current).line, "Stack overflow."));
+        }
+    }
+
+    // Statements
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt){
+        StmtNode[] statements = compile(stmt.statements);
+        // A block whose variables are hoisted into the enclosing frame runs in the current environment.
+        if (!stmt.scoped){
+            return environment -> {
+                for (StmtNode statement : statements){
+                    Object completion = statement.execute(environment);
+                    if (completion != Completion.NORMAL) return completion;
+                }
+                return Completion.NORMAL;
+            };
+        }
+
+        int slots = stmt.slots;
+        return environment -> {
+            Environment inner = new Environment(environment, slots);
+            for (StmtNode statement : statements){
+                Object completion = statement.execute(inner);
+                if (completion != Completion.NORMAL) return completion;
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt){
+        Symbol name = stmt.name.symbol;
+        int slot = stmt.slot;
+        Token superclassName = stmt.superclass == null ? null : stmt.superclass.name;
+        ExprNode superclassNode = stmt.superclass == null ? null : compile(stmt.superclass);
+
+        List<CompiledFunction.Code> methods = new ArrayList<>();
+        for (Stmt.Function method : stmt.methods){
+            methods.add(function(method, method.name.symbol == Symbol.INIT));
+        }
+
+        return environment -> {
+            LoxClass superclass = null;
+            Environment methodEnvironment = environment;
+            if (superclassNode != null){
+                Object value = superclassNode.evaluate(environment);
+                if (!(value instanceof LoxClass)){
+                    throw new RuntimeError(superclassName, "Superclass must be a class.");
+                }
+                superclass = (LoxClass) value;
+                methodEnvironment = new Environment(environment, 1);
+                methodEnvironment.define(0, superclass);
+            }
+
+            Map<Symbol, LoxMethod> table = new HashMap<>();
+            for (CompiledFunction.Code method : methods){
+                table.put(method.name, new CompiledFunction(method, methodEnvironment));
+            }
+
+            LoxClass klass = new LoxClass(name.name, superclass, table);
+            if (slot == Expr.GLOBAL) environment.define(name, klass);
+            else environment.define(slot, klass);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt){
+        ExprNode expression = compile(stmt.expression);
+        return environment -> {
+            expression.evaluate(environment);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt){
+        Symbol name = stmt.name.symbol;
+        CompiledFunction.Code code = function(stmt, false);
+        if (stmt.slot != Expr.GLOBAL){
+            int slot = stmt.slot;
+            return environment -> {
+                environment.define(slot, new CompiledFunction(code, environment));
+                return Completion.NORMAL;
+            };
+        }
+        return environment -> {
+            environment.define(name, new CompiledFunction(code, environment));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt){
+        ExprNode condition = compile(stmt.condition);
+        StmtNode thenBranch = compile(stmt.thenBranch);
+        if (stmt.elseBranch == null){
+            return environment -> {
+                if (Interpreter.isTruthy(condition.evaluate(environment))) return thenBranch.execute(environment);
+                return Completion.NORMAL;
+            };
+        }
+
+        StmtNode elseBranch = compile(stmt.elseBranch);
+        return environment -> {
+            if (Interpreter.isTruthy(condition.evaluate(environment))){
+                return thenBranch.execute(environment);
+            } else {
+                return elseBranch.execute(environment);
+            }
+        };
+    }
+
+    // Imported modules are linked into the program ahead of the importer by the ModuleLoader.
+    @Override
+    public StmtNode visitImportStmt(Stmt.Import stmt){
+        return environment -> Completion.NORMAL;
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt){
+        ExprNode expression = compile(stmt.expression);
+        return environment -> {
+            System.out.println(Interpreter.stringify(expression.evaluate(environment)));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt){
+        if (stmt.value == null){
+            return environment -> null;
+        }
+
+        ExprNode value = compile(stmt.value);
+        return value::evaluate;
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt){
+        Symbol name = stmt.name.symbol;
+        int slot = stmt.slot;
+        ExprNode initializer = stmt.initializer == null ? environment -> null : compile(stmt.initializer);
+        if (slot != Expr.GLOBAL){
+            return environment -> {
+                environment.define(slot, initializer.evaluate(environment));
+                return Completion.NORMAL;
+            };
+        }
+        return environment -> {
+            environment.define(name, initializer.evaluate(environment));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt){
+        ExprNode condition = compile(stmt.condition);
+        StmtNode body = compile(stmt.body);
+        return environment -> {
+            while (Interpreter.isTruthy(condition.evaluate(environment))){
+                Object completion = body.execute(environment);
+                if (completion != Completion.NORMAL) return completion;
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    // Expressions
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr){
+        ExprNode value = compile(expr.value);
+
+        if (expr.depth != Expr.GLOBAL){
+            int depth = expr.depth;
+            int slot = expr.slot;
+            return environment -> {
+                Object result = value.evaluate(environment);
+                environment.assignAt(depth, slot, result);
+                return result;
+            };
+        }
+
+        Token name = expr.name;
+        return environment -> {
+            Object result = value.evaluate(environment);
+            globals.assign(name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr){
+        return compileChain(expr);
+    }
+
+    // A chain of operators down the left is compiled in a loop, innermost first, each operator's node taking the
+    // node below it as its left operand. Evaluating the nodes still recurses down the chain.
+    private ExprNode compileChain(Expr expr){
+        List<Expr> spine = OperatorChain.spine(expr);
+        ExprNode left = compile(OperatorChain.left(spine.get(spine.size() - 1)));
+        for (int i = spine.size() - 1; i >= 0; i--){
+            Expr operator = spine.get(i);
+            left = operator instanceof Expr.Binary
+                    ? binary((Expr.Binary) operator, left)
+                    : logical((Expr.Logical) operator, left);
+        }
+        return left;
+    }
+
+    private ExprNode binary(Expr.Binary expr, ExprNode left){
+        ExprNode right = compile(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type){
+            case BANG_EQUAL:
+                return environment -> !Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            case EQUAL_EQUAL:
+                return environment -> Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+        }
+
+        return BinaryNode.create(left, numeric(expr.left, left), right, numeric(expr.right, right), operator);
+    }
+
+    // The node as an operand to evaluate unboxed, if the Resolver marked it numeric and it can hand a double over.
+    private static ExprNode.Numeric numeric(Expr expr, ExprNode node){
+        return expr.numeric && node instanceof ExprNode.Numeric ? (ExprNode.Numeric) node : null;
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr){
+        ExprNode[] arguments = new ExprNode[expr.arguments.length];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = compile(expr.arguments[i]);
+        }
+        Token paren = expr.paren;
+
+        CallNode call = call(arguments, paren);
+
+        if (expr.callee instanceof Expr.Get){
+            return invoke((Expr.Get) expr.callee, call);
+        }
+
+        ExprNode callee = compile(expr.callee);
+        return environment -> call.call(callee.evaluate(environment), null, environment);
+    }
+
+    // 'object.name(...)': methods are invoked with the object as receiver instead of through a bound method.
+    private ExprNode invoke(Expr.Get get, CallNode call){
+        ExprNode object = compile(get.object);
+        Token name = get.name;
+        PropertyCache cache = get.cache;
+
+        return environment -> {
+            Object value = object.evaluate(environment);
+            if (!(value instanceof LoxInstance)){
+                throw new RuntimeError(name, "Only instances have properties.");
+            }
+
+            LoxInstance instance = (LoxInstance) value;
+            int index = cache.index(instance, name);
+            if (index >= 0){
+                return call.call(instance.fields[index], null, environment);
+            }
+            return call.call(instance.findMethod(name), instance, environment);
+        };
+    }
+
+    // Evaluates a call's arguments and calls the function with them, or invokes it on the receiver when there is
+    // one, in which case the function is one of the receiver's methods.
+    private interface CallNode {
+        Object call(Object function, LoxInstance receiver, Environment environment);
+    }
+
+    // Picks the entry point for the number of arguments once, here, so calls with up to three arguments build no
+    // argument list.
+    private CallNode call(ExprNode[] arguments, Token paren){
+        return guarded(unguarded(arguments, paren), paren);
+    }
+
+    // Calls nest on the Java stack, so running out of it is reported as a Lox runtime error at the innermost call
+    // that catches it, as the VM does when it runs out of frames. A native's error is reported at its call too.
+    private static CallNode guarded(CallNode call, Token paren){
+        return (function, receiver, environment) -> {
+            try {
+                return call.call(function, receiver, environment);
+            } catch (NativeError | StackOverflowError error){
+                throw Interpreter.callError(paren, error);
+            }
+        };
+    }
+
+    private CallNode unguarded(ExprNode[] arguments, Token paren){
+        switch (arguments.length){
+            case 0:
+                return (function, receiver, environment) -> {
+                    LoxCallable callable = callable(function, 0, paren);
+                    if (receiver != null) return ((LoxMethod) callable).invoke0(this, receiver);
+                    return callable.call0(this);
+                };
+            case 1: {
+                ExprNode argument0 = arguments[0];
+                return (function, receiver, environment) -> {
+                    Object a0 = argument0.evaluate(environment);
+                    LoxCallable callable = callable(function, 1, paren);
+                    if (receiver != null) return ((LoxMethod) callable).invoke1(this, receiver, a0);
+                    return callable.call1(this, a0);
+                };
+            }
+            case 2: {
+                ExprNode argument0 = arguments[0];
+                ExprNode argument1 = arguments[1];
+                return (function, receiver, environment) -> {
+                    Object a0 = argument0.evaluate(environment);
+                    Object a1 = argument1.evaluate(environment);
+                    LoxCallable callable = callable(function, 2, paren);
+                    if (receiver != null) return ((LoxMethod) callable).invoke2(this, receiver, a0, a1);
+                    return callable.call2(this, a0, a1);
+                };
+            }
+            case 3: {
+                ExprNode argument0 = arguments[0];
+                ExprNode argument1 = arguments[1];
+                ExprNode argument2 = arguments[2];
+                return (function, receiver, environment) -> {
+                    Object a0 = argument0.evaluate(environment);
+                    Object a1 = argument1.evaluate(environment);
+                    Object a2 = argument2.evaluate(environment);
+                    LoxCallable callable = callable(function, 3, paren);
+                    if (receiver != null) return ((LoxMethod) callable).invoke3(this, receiver, a0, a1, a2);
+                    return callable.call3(this, a0, a1, a2);
+                };
+            }
+            default:
+                return (function, receiver, environment) -> {
+                    Object[] values = new Object[arguments.length];
+                    for (int i = 0; i < values.length; i++){
+                        values[i] = arguments[i].evaluate(environment);
+                    }
+                    LoxCallable callable = callable(function, values.length, paren);
+                    if (receiver != null) return ((LoxMethod) callable).invokeN(this, receiver, values);
+                    return callable.callN(this, values);
+                };
+        }
+    }
+
+    private static LoxCallable callable(Object function, int argCount, Token paren){
+        if (!(function instanceof LoxCallable)){
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+        LoxCallable callable = (LoxCallable) function;
+        if (argCount != callable.arity()){
+            throw new RuntimeError(paren, "Expected " + callable.arity() +
+                    " arguments but got " + argCount + ".");
+        }
+        return callable;
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr){
+        ExprNode object = compile(expr.object);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+        return environment -> {
+            Object value = object.evaluate(environment);
+            if (value instanceof LoxInstance){
+                return cache.get((LoxInstance) value, name);
+            }
+
+            throw new RuntimeError(name, "Only instances have properties.");
+        };
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr){
+        return compile(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr){
+        return new Constant(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr){
+        return compileChain(expr);
+    }
+
+    private ExprNode logical(Expr.Logical expr, ExprNode left){
+        ExprNode right = compile(expr.right);
+
+        if (expr.operator.type == TokenType.OR){
+            return environment -> {
+                Object value = left.evaluate(environment);
+                if (Interpreter.isTruthy(value)) return value;
+                return right.evaluate(environment);
+            };
+        }
+
+        return environment -> {
+            Object value = left.evaluate(environment);
+            if (!Interpreter.isTruthy(value)) return value;
+            return right.evaluate(environment);
+        };
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr){
+        ExprNode object = compile(expr.object);
+        ExprNode value = compile(expr.value);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+        return environment -> {
+            Object instance = object.evaluate(environment);
+            if (!(instance instanceof LoxInstance)){
+                throw new RuntimeError(name, "Only instances have fields");
+            }
+
+            Object result = value.evaluate(environment);
+            cache.set((LoxInstance) instance, name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr){
+        int distance = expr.depth;
+        Token method = expr.method;
+        return environment -> {
+            LoxClass superclass = (LoxClass) environment.getAt(distance, 0);
+            LoxInstance object = (LoxInstance) environment.getAt(distance - 1, 0);
+            LoxMethod function = superclass.findMethod(method.symbol);
+
+            if (function == null){
+                throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+            }
+
+            return function.bind(object);
+        };
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr){
+        return variable(expr.keyword, expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr){
+        ExprNode right = compile(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type){
+            case BANG:
+                return environment -> !Interpreter.isTruthy(right.evaluate(environment));
+            case MINUS:
+                return environment -> {
+                    Object value = right.evaluate(environment);
+                    Interpreter.checkNumberOperand(operator, value);
+                    return -(double)value;
+                };
+        }
+
+        // Unreachable
+        return null;
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr){
+        return variable(expr.name, expr.depth, expr.slot);
+    }
+
+    // Helpers
+
+    private ExprNode variable(Token name, int depth, int slot){
+        if (depth == Expr.GLOBAL){
+            return environment -> globals.get(name);
+        }
+
+        return environment -> environment.getAt(depth, slot);
+    }
+
+    private CompiledFunction.Code function(Stmt.Function declaration, boolean isInitializer){
+        return new CompiledFunction.Code(declaration.name.symbol, declaration.params.length, declaration.frameSize,
+                isInitializer, compile(declaration.body));
+    }
+
+    private StmtNode[] compile(Stmt[] statements){
+        StmtNode[] nodes = new StmtNode[statements.length];
+        for (int i = 0; i < nodes.length; i++){
+            nodes[i] = compile(statements[i]);
+        }
+        return nodes;
+    }
+
+    private StmtNode compile(Stmt stmt){
+        return stmt.accept(this);
+    }
+
+    private ExprNode compile(Expr expr){
+        return expr.accept(this);
+    }
+
+    // A literal. Every literal is one of these, so that the call sites that evaluate operands see no more classes
+    // than before, and a number goes to a numeric parent unboxed.
+    private static final class Constant implements ExprNode.Numeric {
+        private final Object value;
+
+        Constant(Object value){
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(Environment environment){
+            return value;
+        }
+
+        @Override
+        public double evaluateDouble(Environment environment){
+            return (double)value;
+        }
+    }
+}
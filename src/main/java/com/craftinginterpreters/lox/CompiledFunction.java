@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+public class CompiledFunction extends FrameFunction {
+
+    // The part of a function shared by all of its closures, compiled once per declaration.
+    static class Code {
+        final Symbol name;
+        final int arity;
+        final int frameSize;
+        final boolean isInitializer;
+        final StmtNode[] body;
+
+        Code(Symbol name, int arity, int frameSize, boolean isInitializer, StmtNode[] body){
+            this.name = name;
+            this.arity = arity;
+            this.frameSize = frameSize;
+            this.isInitializer = isInitializer;
+            this.body = body;
+        }
+    }
+
+    private final Code code;
+
+    CompiledFunction(Code code, Environment closure){
+        this(code, closure, null);
+    }
+
+    private CompiledFunction(Code code, Environment closure, LoxInstance receiver){
+        super(closure, receiver, code.frameSize, code.isInitializer);
+        this.code = code;
+    }
+
+    @Override
+    public CompiledFunction bind(LoxInstance instance){
+        return new CompiledFunction(code, closure, instance);
+    }
+
+    @Override
+    public int arity() {
+        return code.arity;
+    }
+
+    @Override
+    Object run(Environment frame){
+        for (StmtNode statement : code.body){
+            Object completion = statement.execute(frame);
+            if (completion != Completion.NORMAL) return completion;
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public String toString(){
+        return "<fn " + code.name + ">";
+    }
+}
@@ -0,0 +1,541 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Translates resolved statements into bytecode for the VM. Locals live on the VM stack, in the slots of the frame
+// running their function, in declaration order. A nested function reaches a local of an enclosing one through an
+// upvalue, like in clox, so only the variables a closure captures ever leave the stack.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    // The function being compiled: its locals in slot order, and the variables of enclosing functions it refers to.
+    private static class Frame {
+        final Frame enclosing;
+        final List<Local> locals = new ArrayList<>();
+        final List<Capture> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+
+        Frame(Frame enclosing){
+            this.enclosing = enclosing;
+        }
+    }
+
+    private static class Local {
+        final Symbol name;      // null for the unused slot 0 of a function that isn't a method
+        final int depth;
+        boolean captured = false;   // A nested function refers to it, so its scope must close it
+
+        Local(Symbol name, int depth){
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    // Where a new closure gets one of its upvalues: a local slot of the enclosing function, or one of its upvalues.
+    private static class Capture {
+        final boolean local;
+        final int index;
+
+        Capture(boolean local, int index){
+            this.local = local;
+            this.index = index;
+        }
+    }
+
+    private Frame frame;
+    private Chunk chunk;
+    private int line = 0;
+    private boolean hadError = false;
+
+    // Each top-level statement gets its own script chunk, so huge scripts don't overflow a single constant pool.
+    List<VmFunction> compile(List<Stmt> statements){
+        List<VmFunction> scripts = new ArrayList<>();
+        for (Stmt statement : statements){
+            VmFunction script = new VmFunction(null, 0, false);
+            frame = new Frame(null);
+            chunk = script.chunk;
+            compile(statement);
+            emit(OpCode.NIL);
+            emit(OpCode.RETURN);
+            scripts.add(script);
+        }
+
+        if (hadError) return null;
+        return scripts;
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt){
+        beginScope();
+        for (Stmt statement : stmt.statements){
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt){
+        // The methods can refer to a local class, so its slot is taken before they are compiled.
+        boolean global = stmt.slot == Expr.GLOBAL;
+        if (!global){
+            emit(OpCode.NIL);
+            addLocal(stmt.name.symbol);
+        }
+
+        // The superclass stays in a slot of its own, where the methods find 'super'. CLASS consumes a copy.
+        if (stmt.superclass != null){
+            compile(stmt.superclass);
+            line = stmt.superclass.name.line;
+            emit(OpCode.INHERIT);
+            beginScope();
+            addLocal(Symbol.SUPER);
+            emitWithOperand(OpCode.GET_LOCAL, frame.locals.size() - 1);
+        } else {
+            emit(OpCode.NIL);
+        }
+
+        for (Stmt.Function method : stmt.methods){
+            closure(method, true);
+        }
+
+        line = stmt.name.line;
+        emitWithOperands(OpCode.CLASS, constant(stmt.name.lexeme), stmt.methods.length);
+
+        if (global){
+            emitWithOperand(OpCode.DEFINE, constant(stmt.name.symbol));
+        } else {
+            emitWithOperand(OpCode.SET_LOCAL, resolveLocal(frame, stmt.name.symbol));
+            emit(OpCode.POP);
+        }
+
+        if (stmt.superclass != null){
+            endScope();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt){
+        compile(stmt.expression);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt){
+        // A local function is declared first, so that its body can call it through an upvalue.
+        boolean global = stmt.slot == Expr.GLOBAL;
+        if (!global) addLocal(stmt.name.symbol);
+        closure(stmt, false);
+        if (global) emitWithOperand(OpCode.DEFINE, constant(stmt.name.symbol));
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt){
+        compile(stmt.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.thenBranch);
+        int endJump = emitJump(OpCode.JUMP);
+
+        patchJump(elseJump);
+        emit(OpCode.POP);
+        if (stmt.elseBranch != null){
+            compile(stmt.elseBranch);
+        }
+        patchJump(endJump);
+        return null;
+    }
+
+    // Imported modules are linked into the program ahead of the importer by the ModuleLoader.
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt){
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt){
+        compile(stmt.expression);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt){
+        if (stmt.value != null){
+            compile(stmt.value);
+        } else {
+            emit(OpCode.NIL);
+        }
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt){
+        if (stmt.initializer != null){
+            compile(stmt.initializer);
+        } else {
+            emit(OpCode.NIL);
+        }
+
+        // A local's value stays where the initializer left it, which is its slot.
+        if (stmt.slot == Expr.GLOBAL){
+            emitWithOperand(OpCode.DEFINE, constant(stmt.name.symbol));
+        } else {
+            addLocal(stmt.name.symbol);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt){
+        int loopStart = chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emit(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr){
+        compile(expr.value);
+        variable(expr.name, expr.name.symbol, OpCode.SET_LOCAL, OpCode.SET_UPVALUE, OpCode.SET_GLOBAL);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr){
+        compileChain(expr);
+        return null;
+    }
+
+    // A chain of operators down the left is compiled in a loop, innermost first, each operator following the code
+    // that leaves its left operand on the stack.
+    private void compileChain(Expr expr){
+        List<Expr> spine = OperatorChain.spine(expr);
+        compile(OperatorChain.left(spine.get(spine.size() - 1)));
+        for (int i = spine.size() - 1; i >= 0; i--){
+            Expr operator = spine.get(i);
+            if (operator instanceof Expr.Binary){
+                binary((Expr.Binary) operator);
+            } else {
+                logical((Expr.Logical) operator);
+            }
+        }
+    }
+
+    private void binary(Expr.Binary expr){
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type){
+            case GREATER: emit(OpCode.GREATER); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL); break;
+            case LESS: emit(OpCode.LESS); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL); break;
+            case MINUS: emit(OpCode.SUBTRACT); break;
+            case SLASH: emit(OpCode.DIVIDE); break;
+            case STAR: emit(OpCode.MULTIPLY); break;
+            case PLUS: emit(OpCode.ADD); break;
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL); break;
+        }
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr){
+        // A method call leaves the receiver under the method, so the VM never creates a bound closure for it.
+        boolean invoke = expr.callee instanceof Expr.Get;
+        if (invoke){
+            Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            emitWithOperands(OpCode.GET_METHOD, constant(get.name), constant(get.cache));
+        } else {
+            compile(expr.callee);
+        }
+        for (Expr argument : expr.arguments){
+            compile(argument);
+        }
+
+        line = expr.paren.line;
+        emitWithOperand(invoke ? OpCode.INVOKE : OpCode.CALL, expr.arguments.length);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr){
+        compile(expr.object);
+        emitWithOperands(OpCode.GET_PROPERTY, constant(expr.name), constant(expr.cache));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr){
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr){
+        if (expr.value == null){
+            emit(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            emit(OpCode.TRUE);
+        } else if (expr.value.equals(false)) {
+            emit(OpCode.FALSE);
+        } else {
+            emitWithOperand(OpCode.CONSTANT, constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr){
+        compileChain(expr);
+        return null;
+    }
+
+    private void logical(Expr.Logical expr){
+        if (expr.operator.type == TokenType.OR){
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emit(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr){
+        // The object is checked before the value is evaluated, like the Interpreter does.
+        compile(expr.object);
+        line = expr.name.line;
+        emit(OpCode.CHECK_INSTANCE);
+        compile(expr.value);
+        emitWithOperands(OpCode.SET_PROPERTY, constant(expr.name), constant(expr.cache));
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr){
+        variable(expr.keyword, Symbol.THIS, OpCode.GET_LOCAL, OpCode.GET_UPVALUE, OpCode.GET_GLOBAL);
+        variable(expr.keyword, Symbol.SUPER, OpCode.GET_LOCAL, OpCode.GET_UPVALUE, OpCode.GET_GLOBAL);
+        emitWithOperand(OpCode.GET_SUPER, constant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr){
+        variable(expr.keyword, Symbol.THIS, OpCode.GET_LOCAL, OpCode.GET_UPVALUE, OpCode.GET_GLOBAL);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr){
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type){
+            case BANG: emit(OpCode.NOT); break;
+            case MINUS: emit(OpCode.NEGATE); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr){
+        variable(expr.name, expr.name.symbol, OpCode.GET_LOCAL, OpCode.GET_UPVALUE, OpCode.GET_GLOBAL);
+        return null;
+    }
+
+    // Helpers
+
+    private void compile(Stmt stmt){
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr){
+        expr.accept(this);
+    }
+
+    // Compiles the function and emits the CLOSURE that creates it where it is declared.
+    private void closure(Stmt.Function declaration, boolean method){
+        boolean isInitializer = method && declaration.name.symbol == Symbol.INIT;
+        VmFunction function = new VmFunction(declaration.name.symbol, declaration.params.length, isInitializer);
+
+        Frame enclosing = frame;
+        Chunk enclosingChunk = chunk;
+        frame = new Frame(enclosing);
+        chunk = function.chunk;
+
+        // Slot 0 holds the receiver of a method call, then come the arguments.
+        frame.locals.add(new Local(method ? Symbol.THIS : null, 0));
+        beginScope();
+        for (Token param : declaration.params){
+            addLocal(param.symbol);
+        }
+        // RETURN drops the whole frame, so the function's own scope is never ended.
+        for (Stmt statement : declaration.body){
+            compile(statement);
+        }
+        emit(OpCode.NIL);
+        emit(OpCode.RETURN);
+
+        List<Capture> upvalues = frame.upvalues;
+        function.upvalueCount = upvalues.size();
+        frame = enclosing;
+        chunk = enclosingChunk;
+
+        emitWithOperand(OpCode.CLOSURE, constant(function));
+        for (Capture upvalue : upvalues){
+            chunk.writeShort(upvalue.local ? 1 : 0, line);
+            chunk.writeShort(upvalue.index, line);
+        }
+    }
+
+    private void beginScope(){
+        frame.scopeDepth++;
+    }
+
+    // Drops the scope's locals from the stack, closing those a closure captured.
+    private void endScope(){
+        frame.scopeDepth--;
+        List<Local> locals = frame.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > frame.scopeDepth){
+            Local local = locals.remove(locals.size() - 1);
+            emit(local.captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    // The new local takes the next slot, where its value has just been pushed or is about to be.
+    private void addLocal(Symbol name){
+        if (frame.locals.size() > Chunk.MAX_OPERAND){
+            error("Too many local variables in function.");
+            return;
+        }
+        frame.locals.add(new Local(name, frame.scopeDepth));
+    }
+
+    // Emits the instruction for the variable 'symbol' refers to: a local of the function being compiled, a local of
+    // an enclosing function reached through an upvalue, or else the global 'name'.
+    private void variable(Token name, Symbol symbol, byte local, byte upvalue, byte global){
+        int index = resolveLocal(frame, symbol);
+        if (index >= 0){
+            emitWithOperand(local, index);
+            return;
+        }
+        index = resolveUpvalue(frame, symbol);
+        if (index >= 0){
+            emitWithOperand(upvalue, index);
+            return;
+        }
+        emitWithOperand(global, constant(name));
+    }
+
+    // The slot of the innermost local of the frame with that name, or -1.
+    private static int resolveLocal(Frame frame, Symbol name){
+        for (int i = frame.locals.size() - 1; i >= 0; i--){
+            if (frame.locals.get(i).name == name) return i;
+        }
+        return -1;
+    }
+
+    // The index of the frame's upvalue for the local of an enclosing function with that name, or -1. Every function
+    // in between gets an upvalue for it too.
+    private int resolveUpvalue(Frame frame, Symbol name){
+        if (frame.enclosing == null) return -1;
+
+        int local = resolveLocal(frame.enclosing, name);
+        if (local >= 0){
+            frame.enclosing.locals.get(local).captured = true;
+            return addUpvalue(frame, true, local);
+        }
+
+        int upvalue = resolveUpvalue(frame.enclosing, name);
+        if (upvalue >= 0) return addUpvalue(frame, false, upvalue);
+        return -1;
+    }
+
+    private int addUpvalue(Frame frame, boolean local, int index){
+        List<Capture> upvalues = frame.upvalues;
+        for (int i = 0; i < upvalues.size(); i++){
+            Capture upvalue = upvalues.get(i);
+            if (upvalue.local == local && upvalue.index == index) return i;
+        }
+
+        if (upvalues.size() > Chunk.MAX_OPERAND){
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        upvalues.add(new Capture(local, index));
+        return upvalues.size() - 1;
+    }
+
+    private void emit(byte op){
+        chunk.write(op, line);
+    }
+
+    private void emitWithOperand(byte op, int operand){
+        chunk.write(op, line);
+        chunk.writeShort(operand, line);
+    }
+
+    private void emitWithOperands(byte op, int first, int second){
+        chunk.write(op, line);
+        chunk.writeShort(first, line);
+        chunk.writeShort(second, line);
+    }
+
+    private int emitJump(byte op){
+        emitWithOperand(op, Chunk.MAX_OPERAND);
+        return chunk.count - 2;
+    }
+
+    private void patchJump(int offset){
+        int jump = chunk.count - offset - 2;
+        if (jump > Chunk.MAX_OPERAND){
+            error("Too much code to jump over.");
+        }
+        chunk.patchShort(offset, jump);
+    }
+
+    private void emitLoop(int loopStart){
+        int offset = chunk.count - loopStart + 3;
+        if (offset > Chunk.MAX_OPERAND){
+            error("Loop body too large.");
+        }
+        emitWithOperand(OpCode.LOOP, offset);
+    }
+
+    private int constant(Object value){
+        int index = chunk.addConstant(value);
+        if (index < 0){
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return index;
+    }
+
+    private void error(String message){
+        Lox.error(line, message);
+        hadError = true;
+    }
+}
@@ -0,0 +1,9 @@
+package com.craftinginterpreters.lox;
+
+// Outcome of executing a statement. NORMAL means control falls through to the next statement; any other value
+// is the result of a 'return' on its way out to the enclosing call, so no exception is needed to unwind.
+final class Completion {
+    static final Object NORMAL = new Object();
+
+    private Completion(){ }
+}
@@ -0,0 +1,238 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Incremental front end for a text edited a little at a time, like a REPL session or a file open in an editor.
+// The text is split into top-level declarations, each kept with its resolved statements. After an edit, only the
+// declarations overlapping the changed text are scanned, parsed and resolved again. The others are reused and moved
+// to their new offset and line, except those with errors, which are built again to report them. Top-level names are
+// globals, looked up at run time, so resolving a declaration never depends on another top-level declaration: nothing
+// outside the changed declarations has to be resolved again.
+class Document {
+
+    static class Declaration {
+        int start;              // Offset of its first character
+        int end;                // Offset just past its last token
+        int line;               // Line of its first character
+        boolean hadError;
+        private List<Stmt> statements;
+        private int resolvedLine;   // The line its statements are on
+
+        private Declaration(int start, int end, int line){
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.resolvedLine = line;
+        }
+    }
+
+    private final StringBuilder text = new StringBuilder();
+    private final List<Declaration> declarations = new ArrayList<>();
+    private final NodeIds ids = new NodeIds();     // Shared by every declaration's parse
+    private boolean errorOutsideDeclarations = false;
+
+    CharSequence text(){
+        return text;
+    }
+
+    List<Declaration> declarations(){
+        return declarations;
+    }
+
+    boolean hadError(){
+        if (errorOutsideDeclarations) return true;
+        for (Declaration declaration : declarations){
+            if (declaration.hadError) return true;
+        }
+        return false;
+    }
+
+    List<Stmt> statements(){
+        return statements(declarations);
+    }
+
+    // The statements of a declaration that has moved to another line since it was resolved are shifted there first,
+    // so that their tokens carry the lines runtime errors report.
+    List<Stmt> statements(List<Declaration> declarations){
+        List<Stmt> statements = new ArrayList<>();
+        for (Declaration declaration : declarations){
+            if (declaration.line != declaration.resolvedLine && !declaration.hadError){
+                LineShifter.shift(declaration.statements, declaration.line - declaration.resolvedLine);
+                declaration.resolvedLine = declaration.line;
+            }
+            statements.addAll(declaration.statements);
+        }
+        return statements;
+    }
+
+    // Replaces text[start, end) with the replacement and returns the declarations built again, in order. Errors are
+    // reported as usual, and each declaration records whether it had any. The text is edited in place, and only the
+    // declarations from the one before the edit on are looked at, so appending to the end costs the same however long
+    // the text already is.
+    List<Declaration> update(int start, int end, CharSequence replacement){
+        int delta = replacement.length() - (end - start);
+        text.replace(start, end, replacement.toString());
+        int editEnd = start + replacement.length();     // The text from here on is the old text from 'end' on
+
+        // Start again from the last declaration that ends before the edit, as an 'else' added after an 'if' would
+        // extend it. The scanner reads up to two characters past a token to end it, so a token that starts before
+        // the edit can still change, like a '/' followed by a new '/'.
+        int first = firstEndingAfter(start - 2);
+
+        int offset = 0;
+        int line = 1;
+        if (first > 0){
+            first--;
+            offset = declarations.get(first).start;
+            line = declarations.get(first).line;
+        }
+
+        List<Declaration> updated = new ArrayList<>();  // Replacing the old declarations from 'first' on
+        List<Declaration> changed = new ArrayList<>();
+        int old = first;                // The next old declaration that may be reused
+        int kept = declarations.size(); // The old declarations from here on are reused, moved past the edit
+
+        // Lox.hadError is reset per declaration to tell which ones have errors. Errors in the text between two
+        // declarations are reported while scanning the first one, and count as its errors.
+        boolean reported = Lox.hadError;
+        boolean errors = false;
+        Lox.hadError = false;
+        Scanner scanner = new Scanner(text, offset, text.length(), line);
+        TokenBuffer tokens = scanner.newBuffer();
+        scanner.scan(tokens, 1);
+
+        while (tokens.type(0) != TokenType.EOF){
+            int tokenStart = tokens.start(0);
+
+            // Past the edit, the old declarations from one starting here on are unchanged.
+            if (tokenStart >= editEnd && !Lox.hadError){
+                while (old < declarations.size() && (declarations.get(old).start < end
+                        || declarations.get(old).start + delta < tokenStart)) old++;
+
+                if (old < declarations.size() && declarations.get(old).start + delta == tokenStart){
+                    int shift = firstLine(text, tokens) - declarations.get(old).line;
+                    for (Declaration declaration : declarations.subList(old, declarations.size())){
+                        declaration.start += delta;
+                        declaration.end += delta;
+                        declaration.line += shift;
+                    }
+                    kept = old;
+                    break;
+                }
+            }
+
+            TokenBuffer next = scanDeclaration(scanner, tokens);
+            int tokenEnd = tokens.start(tokens.count - 1);
+
+            // Before the edit, a declaration spanning the same text is unchanged. One with errors is built again, as
+            // they may have come from the text after it.
+            while (old < declarations.size() && declarations.get(old).start < Math.min(tokenStart, start)) old++;
+            if (tokenEnd <= start && !Lox.hadError && old < declarations.size()
+                    && declarations.get(old).start == tokenStart && declarations.get(old).end == tokenEnd
+                    && !declarations.get(old).hadError){
+                updated.add(declarations.get(old));
+            } else {
+                Declaration declaration = new Declaration(tokenStart, tokenEnd, firstLine(text, tokens));
+                List<Stmt> statements = new Parser(tokens, ids).parse();
+                declaration.statements = Lox.hadError ? statements : resolve(statements);
+                declaration.hadError = Lox.hadError;
+                updated.add(declaration);
+                changed.add(declaration);
+            }
+            tokens = next;
+            errors |= Lox.hadError;
+            Lox.hadError = false;
+        }
+
+        // Errors after the last declaration scanned, e.g. in a text with no declarations at all.
+        errorOutsideDeclarations = Lox.hadError;
+        declarations.subList(first, kept).clear();
+        declarations.addAll(first, updated);
+        errors |= rebuildErrors(first + updated.size(), changed);
+        Lox.hadError |= reported || errors;
+        return changed;
+    }
+
+    // The index of the first declaration that ends after the offset. Declarations are in order and don't overlap.
+    private int firstEndingAfter(int offset){
+        int low = 0;
+        int high = declarations.size();
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (declarations.get(middle).end <= offset){
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Builds the moved declarations that had errors again, from 'first' on, so that their errors are reported again,
+    // with their new lines. A declaration's errors can come from the text up to the next one, so that is scanned too.
+    // Returns whether any still has errors.
+    private boolean rebuildErrors(int first, List<Declaration> changed){
+        boolean errors = false;
+        for (int i = first; i < declarations.size(); i++){
+            Declaration declaration = declarations.get(i);
+            if (!declaration.hadError) continue;
+
+            int end = i + 1 < declarations.size() ? declarations.get(i + 1).start : text.length();
+            Scanner scanner = new Scanner(text, declaration.start, end, declaration.line);
+            List<Stmt> statements = new Parser(scanner, ids).parse();
+            declaration.statements = Lox.hadError ? statements : resolve(statements);
+            declaration.resolvedLine = declaration.line;
+            declaration.hadError = Lox.hadError;
+            changed.add(declaration);
+            errors |= Lox.hadError;
+            Lox.hadError = false;
+        }
+        return errors;
+    }
+
+    // Scans the rest of the declaration whose first token is in 'tokens', and ends it with an EOF token. It ends at
+    // a ';' or '}' outside any brackets that is not followed by 'else'. Returns a buffer holding the token after it.
+    private static TokenBuffer scanDeclaration(Scanner scanner, TokenBuffer tokens){
+        int depth = 0;
+        for (int i = 0; ; i++){
+            TokenType type = tokens.type(i);
+            if (type == TokenType.EOF){
+                TokenBuffer next = scanner.newBuffer();
+                next.add(TokenType.EOF, tokens.start(i), 0, tokens.line(i));
+                return next;
+            }
+
+            if (type == TokenType.LEFT_PAREN || type == TokenType.LEFT_BRACE){
+                depth++;
+            } else if ((type == TokenType.RIGHT_PAREN || type == TokenType.RIGHT_BRACE) && depth > 0){
+                depth--;
+            }
+
+            if (tokens.count == i + 1) scanner.scan(tokens, 1);
+
+            if (depth == 0 && (type == TokenType.SEMICOLON || type == TokenType.RIGHT_BRACE)
+                    && tokens.type(i + 1) != TokenType.ELSE){
+                TokenBuffer next = scanner.newBuffer();
+                next.add(tokens.type(i + 1), tokens.start(i + 1), tokens.length(i + 1), tokens.line(i + 1));
+                tokens.truncate(i + 1);
+                tokens.add(TokenType.EOF, tokens.start(i) + tokens.length(i), 0, tokens.line(i));
+                return next;
+            }
+        }
+    }
+
+    // A token is on the line where it ends, which for a string spanning lines is not the line where it starts.
+    private static int firstLine(CharSequence text, TokenBuffer tokens){
+        int line = tokens.line(0);
+        for (int i = tokens.start(0); i < tokens.start(0) + tokens.length(0); i++){
+            if (text.charAt(i) == '\n') line--;
+        }
+        return line;
+    }
+
+    private static List<Stmt> resolve(List<Stmt> statements){
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
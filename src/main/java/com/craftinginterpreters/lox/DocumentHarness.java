@@ -0,0 +1,44 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// Test harness for Document, which RunTests runs in place of the interpreter for a script with an '// edited from:'
+// comment. It opens the earlier version of the script as a document, the way editor tooling keeps a file open, edits
+// it into the script and runs that, so only the declarations the edit touched go through the front end again. The
+// errors in the earlier version are reported, but only those in the script count.
+public class DocumentHarness {
+
+    public static void main(String[] args) throws IOException{
+        Engine engine = args.length == 3 && args[0].startsWith("--engine=")
+                ? Lox.newEngine(args[0].substring("--engine=".length()))
+                : null;
+        if (engine == null){
+            System.out.println("Usage: document_harness --engine=tree|closure|vm earlier script");
+            System.exit(64);
+        }
+
+        Document document = new Document();
+        document.update(0, 0, Lox.readSource(Paths.get(args[1])));
+        Lox.hadError = false;
+        edit(document, Lox.readSource(Paths.get(args[2])));
+        if (!Lox.hadError) Lox.run(engine, new ModuleLoader().load(document.statements()));
+        if (Lox.hadError) System.exit(65);
+        if (Lox.hadRuntimeError) System.exit(70);
+    }
+
+    // Edits the document's text into the new text, as the one edit between the text the two have in common at their
+    // start and at their end.
+    private static void edit(Document document, CharSequence newText){
+        CharSequence oldText = document.text();
+        int length = Math.min(oldText.length(), newText.length());
+        int prefix = 0;
+        while (prefix < length && oldText.charAt(prefix) == newText.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < length - prefix
+                && oldText.charAt(oldText.length() - 1 - suffix) == newText.charAt(newText.length() - 1 - suffix)){
+            suffix++;
+        }
+        document.update(prefix, oldText.length() - suffix, newText.subSequence(prefix, newText.length() - suffix));
+    }
+}
@@ -0,0 +1,7 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+public interface Engine {
+    void interpret(List<Stmt> statements);
+}
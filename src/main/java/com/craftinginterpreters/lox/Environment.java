@@ -1,58 +1,69 @@
 package com.craftinginterpreters.lox;
 
-import java.util.Map;
-import java.util.HashMap;
+import java.util.Arrays;
 
 public class Environment {
+    // Marks the globals that haven't been defined yet.
+    private static final Object UNDEFINED = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+
+    // Globals are late bound, so they are looked up by name: the array is indexed by the Symbol id. Locals get a
+    // slot from the Resolver, which also counts how many a block or function needs.
+    private Object[] slots;
 
     Environment(){
         enclosing = null;
+        slots = new Object[0];
     }
 
-    Environment(Environment enclosing){
+    Environment(Environment enclosing, int size){
         this.enclosing = enclosing;
+        slots = new Object[size];
+    }
+
+    // Defines a global.
+    void define(Symbol name, Object value){
+        int id = name.id;
+        if (id >= slots.length){
+            int length = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(id + 1, length * 2));
+            Arrays.fill(slots, length, slots.length, UNDEFINED);
+        }
+        slots[id] = value;
     }
 
-    void define(String name, Object value){
-        values.put(name, value);
+    // Defines a local in the slot the Resolver gave it.
+    void define(int slot, Object value){
+        slots[slot] = value;
     }
 
     void assign(Token name, Object value){
-        if (values.containsKey(name.lexeme)){
-            values.put(name.lexeme, value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
+        int id = name.symbol.id;
+        if (id < slots.length && slots[id] != UNDEFINED){
+            slots[id] = value;
             return;
         }
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    void assignAt(int distance, Token name, Object value){
-        ancestor(distance).values.put(name.lexeme, value);
+    void assignAt(int distance, int slot, Object value){
+        ancestor(distance).slots[slot] = value;
     }
 
     Object get(Token name){
-        if (values.containsKey(name.lexeme)){
-            return values.get(name.lexeme);
-        }
-        if (enclosing != null){
-            return enclosing.get(name);
+        int id = name.symbol.id;
+        if (id < slots.length){
+            Object value = slots[id];
+            if (value != UNDEFINED) return value;
         }
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    Object getAt(int distance, Token name){
-        return getAt(distance, name.lexeme);
-    }
-
-    Object getAt(int distance, String name){
-        return ancestor(distance).values.get(name);
+    Object getAt(int distance, int slot){
+        return ancestor(distance).slots[slot];
     }
 
     Environment ancestor(int distance){
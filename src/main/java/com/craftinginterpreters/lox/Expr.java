@@ -1,9 +1,13 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 abstract class Expr {
 
+    static final int GLOBAL = -1;
+
+    int id = -1;    // From NodeIds, or -1 for a node made outside the front end
+    int line;       // Where the node starts in the source
+    boolean numeric;   // Can only produce a number, if it doesn't fail. Set by the Resolver
+
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitBinaryExpr(Binary expr);
@@ -19,22 +23,67 @@ abstract class Expr {
         R visitVariableExpr(Variable expr);
     }
 
+    interface DoubleVisitor {
+        double visitAssignExprAsDouble(Assign expr);
+        double visitBinaryExprAsDouble(Binary expr);
+        double visitCallExprAsDouble(Call expr);
+        double visitGetExprAsDouble(Get expr);
+        double visitGroupingExprAsDouble(Grouping expr);
+        double visitLiteralExprAsDouble(Literal expr);
+        double visitLogicalExprAsDouble(Logical expr);
+        double visitSetExprAsDouble(Set expr);
+        double visitSuperExprAsDouble(Super expr);
+        double visitThisExprAsDouble(This expr);
+        double visitUnaryExprAsDouble(Unary expr);
+        double visitVariableExprAsDouble(Variable expr);
+    }
+
+    interface BooleanVisitor {
+        boolean visitAssignExprAsBoolean(Assign expr);
+        boolean visitBinaryExprAsBoolean(Binary expr);
+        boolean visitCallExprAsBoolean(Call expr);
+        boolean visitGetExprAsBoolean(Get expr);
+        boolean visitGroupingExprAsBoolean(Grouping expr);
+        boolean visitLiteralExprAsBoolean(Literal expr);
+        boolean visitLogicalExprAsBoolean(Logical expr);
+        boolean visitSetExprAsBoolean(Set expr);
+        boolean visitSuperExprAsBoolean(Super expr);
+        boolean visitThisExprAsBoolean(This expr);
+        boolean visitUnaryExprAsBoolean(Unary expr);
+        boolean visitVariableExprAsBoolean(Variable expr);
+    }
+
     abstract <R> R accept(Visitor<R> visitor);
+    abstract double accept(DoubleVisitor visitor);
+    abstract boolean accept(BooleanVisitor visitor);
 
     static class Assign extends Expr {
 
         final Token name;
         final Expr value;
+        int depth = GLOBAL;
+        int slot;
 
         Assign(Token name, Expr value) {
             this.name = name; 
             this.value = value; 
+            this.line = name.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitAssignExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitAssignExprAsBoolean(this);
+        }
     }
 
     static class Binary extends Expr {
@@ -47,46 +96,80 @@ abstract class Expr {
             this.left = left; 
             this.operator = operator; 
             this.right = right; 
+            this.line = left.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitBinaryExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitBinaryExprAsBoolean(this);
+        }
     }
 
     static class Call extends Expr {
 
         final Expr callee;
         final Token paren;
-        final List<Expr> arguments;
+        final Expr[] arguments;
 
-        Call(Expr callee, Token paren, List<Expr> arguments) {
+        Call(Expr callee, Token paren, Expr[] arguments) {
             this.callee = callee; 
             this.paren = paren; 
             this.arguments = arguments; 
+            this.line = callee.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitCallExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitCallExprAsBoolean(this);
+        }
     }
 
     static class Get extends Expr {
 
         final Expr object;
         final Token name;
+        final PropertyCache cache = new PropertyCache();
 
         Get(Expr object, Token name) {
             this.object = object; 
             this.name = name; 
+            this.line = object.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitGetExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitGetExprAsBoolean(this);
+        }
     }
 
     static class Grouping extends Expr {
@@ -95,12 +178,23 @@ abstract class Expr {
 
         Grouping(Expr expression) {
             this.expression = expression; 
+            this.line = expression.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitGroupingExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitGroupingExprAsBoolean(this);
+        }
     }
 
     static class Literal extends Expr {
@@ -115,6 +209,16 @@ abstract class Expr {
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitLiteralExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitLiteralExprAsBoolean(this);
+        }
     }
 
     static class Logical extends Expr {
@@ -127,12 +231,23 @@ abstract class Expr {
             this.left = left; 
             this.operator = operator; 
             this.right = right; 
+            this.line = left.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitLogicalExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitLogicalExprAsBoolean(this);
+        }
     }
 
     static class Set extends Expr {
@@ -140,47 +255,84 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        final PropertyCache cache = new PropertyCache();
 
         Set(Expr object, Token name, Expr value) {
             this.object = object; 
             this.name = name; 
             this.value = value; 
+            this.line = object.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitSetExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitSetExprAsBoolean(this);
+        }
     }
 
     static class Super extends Expr {
 
         final Token keyword;
         final Token method;
+        int depth = GLOBAL;
 
         Super(Token keyword, Token method) {
             this.keyword = keyword; 
             this.method = method; 
+            this.line = keyword.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitSuperExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitSuperExprAsBoolean(this);
+        }
     }
 
     static class This extends Expr {
 
         final Token keyword;
+        int depth = GLOBAL;
+        int slot;
 
         This(Token keyword) {
             this.keyword = keyword; 
+            this.line = keyword.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitThisExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitThisExprAsBoolean(this);
+        }
     }
 
     static class Unary extends Expr {
@@ -191,26 +343,50 @@ abstract class Expr {
         Unary(Token operator, Expr right) {
             this.operator = operator; 
             this.right = right; 
+            this.line = operator.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitUnaryExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitUnaryExprAsBoolean(this);
+        }
     }
 
     static class Variable extends Expr {
 
         final Token name;
+        int depth = GLOBAL;
+        int slot;
 
         Variable(Token name) {
             this.name = name; 
+            this.line = name.line;
         }
 
         @Override
         <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
+
+        @Override
+        double accept(DoubleVisitor visitor) {
+            return visitor.visitVariableExprAsDouble(this);
+        }
+
+        @Override
+        boolean accept(BooleanVisitor visitor) {
+            return visitor.visitVariableExprAsBoolean(this);
+        }
     }
 }
 
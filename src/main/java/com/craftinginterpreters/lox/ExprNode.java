@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+// An expression compiled by the ClosureCompiler. Everything known statically is already bound inside the node.
+interface ExprNode {
+    Object evaluate(Environment environment);
+
+    // A node that can produce its value as a primitive double. A parent only uses it for an operand the Resolver
+    // marked numeric, which produces a number or fails with its own runtime error.
+    interface Numeric extends ExprNode {
+        double evaluateDouble(Environment environment);
+    }
+}
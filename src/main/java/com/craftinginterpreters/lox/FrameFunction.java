@@ -0,0 +1,147 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// A function of the tree-walking or the closure engine. A call runs the body in a new environment, the frame, that
+// holds 'this' in its first slot for a method and the arguments after it. Every entry point is implemented here,
+// for both engines: it builds the frame and hands it to run(), which a subclass implements with its own engine.
+abstract class FrameFunction implements LoxMethod {
+    final Environment closure;
+    final LoxInstance receiver;     // Set only on bound methods
+    final boolean isInitializer;
+    private final int frameSize;
+
+    FrameFunction(Environment closure, LoxInstance receiver, int frameSize, boolean isInitializer){
+        this.closure = closure;
+        this.receiver = receiver;
+        this.frameSize = frameSize;
+        this.isInitializer = isInitializer;
+    }
+
+    // Runs the body in the frame, and returns how it completed.
+    abstract Object run(Environment frame);
+
+    @Override
+    public final Object call(Engine engine, List<Object> arguments){
+        return result(run(frame(receiver, arguments)), receiver);
+    }
+
+    @Override
+    public final Object call0(Engine engine){
+        return result(run(frame(receiver)), receiver);
+    }
+
+    @Override
+    public final Object call1(Engine engine, Object a0){
+        return result(run(frame(receiver, a0)), receiver);
+    }
+
+    @Override
+    public final Object call2(Engine engine, Object a0, Object a1){
+        return result(run(frame(receiver, a0, a1)), receiver);
+    }
+
+    @Override
+    public final Object call3(Engine engine, Object a0, Object a1, Object a2){
+        return result(run(frame(receiver, a0, a1, a2)), receiver);
+    }
+
+    @Override
+    public final Object callN(Engine engine, Object... arguments){
+        return result(run(frame(receiver, arguments)), receiver);
+    }
+
+    @Override
+    public final Object invoke(Engine engine, LoxInstance receiver, List<Object> arguments){
+        return result(run(frame(receiver, arguments)), receiver);
+    }
+
+    @Override
+    public final Object invoke0(Engine engine, LoxInstance receiver){
+        return result(run(frame(receiver)), receiver);
+    }
+
+    @Override
+    public final Object invoke1(Engine engine, LoxInstance receiver, Object a0){
+        return result(run(frame(receiver, a0)), receiver);
+    }
+
+    @Override
+    public final Object invoke2(Engine engine, LoxInstance receiver, Object a0, Object a1){
+        return result(run(frame(receiver, a0, a1)), receiver);
+    }
+
+    @Override
+    public final Object invoke3(Engine engine, LoxInstance receiver, Object a0, Object a1, Object a2){
+        return result(run(frame(receiver, a0, a1, a2)), receiver);
+    }
+
+    @Override
+    public final Object invokeN(Engine engine, LoxInstance receiver, Object... arguments){
+        return result(run(frame(receiver, arguments)), receiver);
+    }
+
+    private Environment frame(LoxInstance receiver){
+        Environment frame = new Environment(closure, frameSize);
+        if (receiver != null){
+            frame.define(0, receiver);
+        }
+        return frame;
+    }
+
+    private Environment frame(LoxInstance receiver, Object a0){
+        Environment frame = frame(receiver);
+        frame.define(firstArgument(receiver), a0);
+        return frame;
+    }
+
+    private Environment frame(LoxInstance receiver, Object a0, Object a1){
+        Environment frame = frame(receiver);
+        int slot = firstArgument(receiver);
+        frame.define(slot, a0);
+        frame.define(slot + 1, a1);
+        return frame;
+    }
+
+    private Environment frame(LoxInstance receiver, Object a0, Object a1, Object a2){
+        Environment frame = frame(receiver);
+        int slot = firstArgument(receiver);
+        frame.define(slot, a0);
+        frame.define(slot + 1, a1);
+        frame.define(slot + 2, a2);
+        return frame;
+    }
+
+    private Environment frame(LoxInstance receiver, Object[] arguments){
+        Environment frame = frame(receiver);
+        int slot = firstArgument(receiver);
+        for (Object argument : arguments){
+            frame.define(slot++, argument);
+        }
+        return frame;
+    }
+
+    private Environment frame(LoxInstance receiver, List<Object> arguments){
+        Environment frame = frame(receiver);
+        int slot = firstArgument(receiver);
+        for (Object argument : arguments){
+            frame.define(slot++, argument);
+        }
+        return frame;
+    }
+
+    // The result of a call, given how the body completed.
+    private Object result(Object completion, LoxInstance receiver){
+        if (isInitializer){
+            return receiver;
+        }
+        if (completion == Completion.NORMAL){
+            return null;
+        }
+        return completion;
+    }
+
+    private static int firstArgument(LoxInstance receiver){
+        return receiver == null ? 0 : 1;
+    }
+}
@@ -1,78 +1,79 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
+public class Interpreter implements Engine, Expr.Visitor<Object>, Expr.DoubleVisitor, Expr.BooleanVisitor,
+        Stmt.Visitor<Object>{
 
-    private final Map<Expr, Integer> locals = new HashMap<>();
     final Environment globals = new Environment();
     private Environment environment = globals;
+    // This interpreter as each of the expression visitors that don't return an Object. Passing 'this' to accept()
+    // would be ambiguous.
+    private final Expr.DoubleVisitor doubles = this;
+    private final Expr.BooleanVisitor booleans = this;
 
     Interpreter(){
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() { return 0; }
-
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
-            }
-
-            @Override
-            public String toString() { return "<native fn>"; }
-        });
+        Natives.define(globals);
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt){
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Object visitBlockStmt(Stmt.Block stmt){
+        // A block whose variables are hoisted into the enclosing frame runs in the current environment.
+        if (!stmt.scoped) return executeBlock(stmt.statements, environment);
+        return executeBlock(stmt.statements, new Environment(environment, stmt.slots));
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt){
-        if (isTruthy(evaluate(stmt.condition))){
-            execute(stmt.thenBranch);
+    public Object visitIfStmt(Stmt.If stmt){
+        if (stmt.condition.accept(booleans)){
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
+    // Imported modules are linked into the program ahead of the importer by the ModuleLoader.
     @Override
-    public Void visitWhileStmt(Stmt.While stmt){
-        while (isTruthy(evaluate(stmt.condition))){
-            execute(stmt.body);
+    public Object visitImportStmt(Stmt.Import stmt){
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitWhileStmt(Stmt.While stmt){
+        while (stmt.condition.accept(booleans)){
+            Object completion = execute(stmt.body);
+            if (completion != Completion.NORMAL) return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt){
+    public Object visitPrintStmt(Stmt.Print stmt){
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt){
+    public Object visitReturnStmt(Stmt.Return stmt){
+        // Visited without evaluate() in between, which would be one more Java frame for each recursive Lox call.
         Object value = null;
-        if (stmt.value != null) value = evaluate(stmt.value);
+        if (stmt.value != null) value = stmt.value.accept((Expr.Visitor<Object>) this);
 
-        throw new Return(value);
+        return value;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt){
+    public Object visitExpressionStmt(Stmt.Expression stmt){
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt){
+    public Object visitClassStmt(Stmt.Class stmt){
         Object superclass = null;
         if (stmt.superclass != null){
             superclass = evaluate(stmt.superclass);
@@ -81,17 +82,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
-
         if (stmt.superclass != null){
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            environment.define(0, superclass);
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxMethod> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods){
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, environment, method.name.symbol == Symbol.INIT, this);
+            methods.put(method.name.symbol, function);
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass , methods);
@@ -100,35 +99,34 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
             environment = environment.enclosing;
         }
 
-        environment.assign(stmt.name, klass);
-        return null;
+        define(stmt.name, stmt.slot, klass);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt){
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Object visitFunctionStmt(Stmt.Function stmt){
+        LoxFunction function = new LoxFunction(stmt, environment, false, this);
+        define(stmt.name, stmt.slot, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt){
+    public Object visitVarStmt(Stmt.Var stmt){
         Object value = null;
         if (stmt.initializer != null){
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.name, stmt.slot, value);
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr){
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null){
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth != Expr.GLOBAL){
+            environment.assignAt(expr.depth, expr.slot, value);
         } else {
             globals.assign(expr.name, value);
         }
@@ -158,16 +156,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         return evaluate(expr.expression);
     }
 
+    // Unboxed evaluation. An operator that needs numbers visits the operands the Resolver marked numeric with the
+    // double visitor, so nested arithmetic is computed on primitive doubles and only the final result is boxed,
+    // when it escapes through evaluate() into a variable, a field or an argument. Any other operand is evaluated
+    // boxed and checked with instanceof. Conditions are visited with the boolean visitor.
+    //
+    // The double visitor is only ever given a numeric expression, which produces a number or fails with its own
+    // runtime error. Operands still run left to right and fail with the same errors. Both visit methods of a binary
+    // operator evaluate its operands themselves, sharing only the arithmetic, so that a Lox call made by an operand
+    // stacks no more Java frames than evaluate() would.
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
-
         switch (expr.operator.type){
-            case BANG:
-                return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -(double)right;
+                return visitUnaryExprAsDouble(expr);
+            case BANG:
+                return !expr.right.accept(booleans);
         }
 
         // Unreachable
@@ -176,75 +181,301 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
-
         switch (expr.operator.type){
-            case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left > (double)right;
-            case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left >= (double)right;
-            case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left < (double)right;
-            case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left <= (double)right;
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left - (double)right;
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
-            case PLUS:
+            case BANG_EQUAL:
+                return !isEqual(evaluate(expr.left), evaluate(expr.right));
+            case EQUAL_EQUAL:
+                return isEqual(evaluate(expr.left), evaluate(expr.right));
+            case PLUS: {
+                if (expr.numeric) break;
+
+                // A '+' that may be concatenating strings
+                Object left = evaluate(expr.left);
+                Object right = evaluate(expr.right);
                 if (left instanceof Double && right instanceof Double){
                     return (double)left + (double)right;
                 }
-                if (left instanceof String && right instanceof String){
-                    return (String)left + (String)right;
+                if (Rope.isString(left) && Rope.isString(right)){
+                    return Rope.concat(left, right);
                 }
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings");
-            case BANG_EQUAL:
-                return !isEqual(left, right);
-            case EQUAL_EQUAL:
-                return isEqual(left, right);
+            }
         }
 
-        // Unreachable
-        return null;
+        double left = expr.left.numeric ? expr.left.accept(doubles) : boxedLeft(expr);
+        double right = expr.right.numeric ? expr.right.accept(doubles) : boxedRight(expr);
+        switch (expr.operator.type){
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            case LESS_EQUAL: return left <= right;
+        }
+        return arithmetic(expr.operator, left, right);
+    }
+
+    // Arithmetic, including a '+' that can only be adding numbers.
+    @Override
+    public double visitBinaryExprAsDouble(Expr.Binary expr){
+        double left = expr.left.numeric ? expr.left.accept(doubles) : boxedLeft(expr);
+        double right = expr.right.numeric ? expr.right.accept(doubles) : boxedRight(expr);
+        return arithmetic(expr.operator, left, right);
+    }
+
+    private static double arithmetic(Token operator, double left, double right){
+        switch (operator.type){
+            case MINUS: return left - right;
+            case SLASH: return left / right;
+            case STAR: return left * right;
+            default: return left + right;
+        }
+    }
+
+    @Override
+    public double visitUnaryExprAsDouble(Expr.Unary expr){
+        if (expr.right.numeric) return -expr.right.accept(doubles);
+
+        Object value = expr.right.accept((Expr.Visitor<Object>) this);
+        if (value instanceof Double) return -(double)value;
+        throw new RuntimeError(expr.operator, "Operand must be a number.");
+    }
+
+    @Override
+    public double visitGroupingExprAsDouble(Expr.Grouping expr){
+        return expr.expression.accept(doubles);
+    }
+
+    @Override
+    public double visitLiteralExprAsDouble(Expr.Literal expr){
+        return (double)expr.value;
+    }
+
+    @Override
+    public double visitAssignExprAsDouble(Expr.Assign expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitCallExprAsDouble(Expr.Call expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitGetExprAsDouble(Expr.Get expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitLogicalExprAsDouble(Expr.Logical expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitSetExprAsDouble(Expr.Set expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitSuperExprAsDouble(Expr.Super expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitThisExprAsDouble(Expr.This expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public double visitVariableExprAsDouble(Expr.Variable expr){
+        return notNumeric(expr);
+    }
+
+    @Override
+    public boolean visitBinaryExprAsBoolean(Expr.Binary expr){
+        return isTruthy(visitBinaryExpr(expr));
+    }
+
+    @Override
+    public boolean visitUnaryExprAsBoolean(Expr.Unary expr){
+        if (expr.operator.type == TokenType.BANG) return !expr.right.accept(booleans);
+        return isTruthy(visitUnaryExpr(expr));
+    }
+
+    @Override
+    public boolean visitLogicalExprAsBoolean(Expr.Logical expr){
+        if (expr.operator.type == TokenType.OR){
+            return expr.left.accept(booleans) || expr.right.accept(booleans);
+        }
+        return expr.left.accept(booleans) && expr.right.accept(booleans);
+    }
+
+    @Override
+    public boolean visitGroupingExprAsBoolean(Expr.Grouping expr){
+        return expr.expression.accept(booleans);
+    }
+
+    @Override
+    public boolean visitLiteralExprAsBoolean(Expr.Literal expr){
+        return isTruthy(expr.value);
+    }
+
+    @Override
+    public boolean visitAssignExprAsBoolean(Expr.Assign expr){
+        return isTruthy(visitAssignExpr(expr));
+    }
+
+    @Override
+    public boolean visitCallExprAsBoolean(Expr.Call expr){
+        return isTruthy(visitCallExpr(expr));
+    }
+
+    @Override
+    public boolean visitGetExprAsBoolean(Expr.Get expr){
+        return isTruthy(visitGetExpr(expr));
+    }
+
+    @Override
+    public boolean visitSetExprAsBoolean(Expr.Set expr){
+        return isTruthy(visitSetExpr(expr));
+    }
+
+    @Override
+    public boolean visitSuperExprAsBoolean(Expr.Super expr){
+        return isTruthy(visitSuperExpr(expr));
+    }
+
+    @Override
+    public boolean visitThisExprAsBoolean(Expr.This expr){
+        return isTruthy(visitThisExpr(expr));
+    }
+
+    @Override
+    public boolean visitVariableExprAsBoolean(Expr.Variable expr){
+        return isTruthy(visitVariableExpr(expr));
+    }
+
+    // Expressions of these kinds are never marked numeric, so they never reach the double visitor.
+    private static double notNumeric(Expr expr){
+        throw new IllegalStateException("Expression at line " + expr.line + " isn't numeric.");
+    }
+
+    // An operand that isn't numeric, evaluated boxed.
+    private double boxedLeft(Expr.Binary expr){
+        Object value = expr.left.accept((Expr.Visitor<Object>) this);
+        if (value instanceof Double) return (double)value;
+        // The right operand still runs before the type error of the left one is reported.
+        evaluate(expr.right);
+        throw operandsError(expr.operator);
+    }
+
+    private double boxedRight(Expr.Binary expr){
+        Object value = expr.right.accept((Expr.Visitor<Object>) this);
+        if (value instanceof Double) return (double)value;
+        throw operandsError(expr.operator);
+    }
+
+    private static RuntimeError operandsError(Token operator){
+        if (operator.type == TokenType.PLUS){
+            return new RuntimeError(operator, "Operands must be two numbers or two strings");
+        }
+        return new RuntimeError(operator, "Operands must be numbers.");
     }
 
+    // Evaluates the arguments and calls the callee through the entry point for their number, so calls with up to
+    // three arguments build no argument list. 'object.name(...)' invokes a method found in the class with the
+    // object as receiver, skipping the bound method that evaluating the Get on its own would create. All of it
+    // is done here, since every Java frame between a call site and the callee's body limits how deep Lox code
+    // can recurse.
     @Override
     public Object visitCallExpr(Expr.Call expr){
-        Object callee = evaluate(expr.callee);
+        Object callee;
+        LoxInstance receiver = null;
+        if (expr.callee instanceof Expr.Get){
+            Expr.Get get = (Expr.Get) expr.callee;
+            Object object = evaluate(get.object);
+            if (!(object instanceof LoxInstance)){
+                throw new RuntimeError(get.name, "Only instances have properties.");
+            }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments){
-            arguments.add(evaluate(argument));
+            LoxInstance instance = (LoxInstance) object;
+            int index = get.cache.index(instance, get.name);
+            if (index >= 0){
+                callee = instance.fields[index];
+            } else {
+                callee = instance.findMethod(get.name);
+                receiver = instance;
+            }
+        } else {
+            callee = evaluate(expr.callee);
+        }
+
+        Expr[] arguments = expr.arguments;
+        try {
+            switch (arguments.length){
+                case 0: {
+                    LoxCallable function = callable(expr, callee, 0);
+                    if (receiver != null) return ((LoxMethod) function).invoke0(this, receiver);
+                    return function.call0(this);
+                }
+                case 1: {
+                    Object a0 = evaluate(arguments[0]);
+                    LoxCallable function = callable(expr, callee, 1);
+                    if (receiver != null) return ((LoxMethod) function).invoke1(this, receiver, a0);
+                    return function.call1(this, a0);
+                }
+                case 2: {
+                    Object a0 = evaluate(arguments[0]);
+                    Object a1 = evaluate(arguments[1]);
+                    LoxCallable function = callable(expr, callee, 2);
+                    if (receiver != null) return ((LoxMethod) function).invoke2(this, receiver, a0, a1);
+                    return function.call2(this, a0, a1);
+                }
+                case 3: {
+                    Object a0 = evaluate(arguments[0]);
+                    Object a1 = evaluate(arguments[1]);
+                    Object a2 = evaluate(arguments[2]);
+                    LoxCallable function = callable(expr, callee, 3);
+                    if (receiver != null) return ((LoxMethod) function).invoke3(this, receiver, a0, a1, a2);
+                    return function.call3(this, a0, a1, a2);
+                }
+                default: {
+                    Object[] values = new Object[arguments.length];
+                    for (int i = 0; i < values.length; i++){
+                        values[i] = evaluate(arguments[i]);
+                    }
+                    LoxCallable function = callable(expr, callee, values.length);
+                    if (receiver != null) return ((LoxMethod) function).invokeN(this, receiver, values);
+                    return function.callN(this, values);
+                }
+            }
+        } catch (NativeError | StackOverflowError error){
+            throw callError(expr.paren, error);
         }
+    }
 
+    // A native's error, or running out of Java stack, which Lox calls nest on, as a runtime error at the call. The
+    // VM reports the same when it runs out of frames.
+    static RuntimeError callError(Token paren, Throwable error){
+        if (error instanceof StackOverflowError) return new RuntimeError(paren, "Stack overflow.");
+        return new RuntimeError(paren, error.getMessage());
+    }
+
+    private static LoxCallable callable(Expr.Call expr, Object callee, int argCount){
         if ( !(callee instanceof LoxCallable) ){
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
         LoxCallable function = (LoxCallable)callee;
-        if (arguments.size() != function.arity()){
+        if (argCount != function.arity()){
             throw new RuntimeError(expr.paren, "Expected " + function.arity() +
-                    " arguments but got " + arguments.size() + ".");
+                    " arguments but got " + argCount + ".");
         }
-
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr){
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance){
-            return ((LoxInstance)object).get(expr.name);
+            return expr.cache.get((LoxInstance)object, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -259,21 +490,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         }
 
         Object value = evaluate(expr.value);
-        ((LoxInstance)object).set(expr.name, value);
+        expr.cache.set((LoxInstance)object, expr.name, value);
         return value;
     }
 
     @Override
     public Object visitThisExpr(Expr.This expr){
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr){
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) environment.getAt(distance-1, "this");
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        int distance = expr.depth;
+        // 'super' is the only variable of its scope, and 'this' is the first slot of the method right inside it.
+        LoxClass superclass = (LoxClass) environment.getAt(distance, 0);
+        LoxInstance object = (LoxInstance) environment.getAt(distance-1, 0);
+        LoxMethod method = superclass.findMethod(expr.method.symbol);
 
         if (method == null){
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
@@ -284,57 +516,70 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr){
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.depth, expr.slot);
     }
 
-    private Object lookUpVariable(Token name, Expr expr){
-        Integer distance = locals.get(expr);
-        if (distance != null){
-            return environment.getAt(distance, name);
+    private Object lookUpVariable(Token name, int depth, int slot){
+        if (depth != Expr.GLOBAL){
+            return environment.getAt(depth, slot);
         } else {
             return globals.get(name);
         }
     }
 
-    void interpret(List<Stmt> statements){
+    @Override
+    public void interpret(List<Stmt> statements){
+        Stmt current = null;
         try{
             for (Stmt statement : statements){
+                current = statement;
                 execute(statement);
             }
         }
         catch (RuntimeError error){
             Lox.runTimeError(error);
         }
+        catch (StackOverflowError error){
+            // Evaluation recurses down an operator chain, so a long enough one can run out of stack outside any call.
+            Lox.runTimeError(new RuntimeError(current.line, "Stack overflow."));
+        }
     }
 
-    void resolve(Expr expr, int depth){
-        locals.put(expr, depth);
-    }
-
-    private void execute(Stmt statement){
-        statement.accept(this);
+    private Object execute(Stmt statement){
+        return statement.accept(this);
     }
 
-    void executeBlock(List<Stmt> statements, Environment newEnvironment){
+    // Stops at the first statement that doesn't complete normally and hands its completion to the caller.
+    Object executeBlock(Stmt[] statements, Environment newEnvironment){
         Environment previousEnvironment = this.environment;
 
         try {
             this.environment = newEnvironment;
 
             for (Stmt statement : statements){
-                execute(statement);
+                Object completion = statement.accept(this);
+                if (completion != Completion.NORMAL) return completion;
             }
+            return Completion.NORMAL;
         }
         finally {
             this.environment = previousEnvironment;
         }
     }
 
+    private void define(Token name, int slot, Object value){
+        if (slot == Expr.GLOBAL){
+            environment.define(name.symbol, value);
+        } else {
+            environment.define(slot, value);
+        }
+    }
+
     private Object evaluate(Expr expr){
-        return expr.accept(this);
+        return expr.accept((Expr.Visitor<Object>) this);
     }
 
-    private String stringify(Object object){
+    static String stringify(Object object){
         if (object == null) return "nil";
 
         if (object instanceof Double){
@@ -349,26 +594,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void>{
         return object.toString();
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b){
+    static boolean isEqual(Object a, Object b){
         if (a == null && b == null) return true;
         if (a == null) return false;
 
+        // A rope equals the String with the same characters.
+        if (b instanceof Rope) return b.equals(a);
+
         // Defaults to Java equals()
         return a.equals(b);
     }
 
-    private void checkNumberOperand(Token operator, Object operand){
+    static void checkNumberOperand(Token operator, Object operand){
         if (operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right){
+    static void checkNumberOperands(Token operator, Object left, Object right){
         if (left instanceof Double && right instanceof Double) return;
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
@@ -0,0 +1,214 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Moves resolved statements down or up a number of lines, for a Document declaration whose text moved with an edit
+// above it. Every node and token gets its new line, and nothing else changes, so the statements don't have to be
+// scanned, parsed and resolved again. A parse never puts a node or a token in two places in its tree.
+class LineShifter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final int shift;
+
+    private LineShifter(int shift){
+        this.shift = shift;
+    }
+
+    static void shift(List<Stmt> statements, int shift){
+        LineShifter shifter = new LineShifter(shift);
+        for (Stmt statement : statements){
+            shifter.shift(statement);
+        }
+    }
+
+    private void shift(Stmt stmt){
+        if (stmt == null) return;
+        stmt.line += shift;
+        stmt.accept(this);
+    }
+
+    private void shift(Stmt[] statements){
+        for (Stmt statement : statements){
+            shift(statement);
+        }
+    }
+
+    private void shift(Expr expr){
+        if (expr == null) return;
+        expr.line += shift;
+        expr.accept(this);
+    }
+
+    private void shift(Token token){
+        token.line += shift;
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt){
+        shift(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt){
+        shift(stmt.name);
+        shift(stmt.superclass);
+        shift(stmt.methods);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt){
+        shift(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt){
+        shift(stmt.name);
+        for (Token param : stmt.params){
+            shift(param);
+        }
+        shift(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt){
+        shift(stmt.condition);
+        shift(stmt.thenBranch);
+        shift(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt){
+        shift(stmt.keyword);
+        shift(stmt.path);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt){
+        shift(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt){
+        shift(stmt.keyword);
+        shift(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt){
+        shift(stmt.name);
+        shift(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt){
+        shift(stmt.condition);
+        shift(stmt.body);
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr){
+        shift(expr.name);
+        shift(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr){
+        shiftChain(expr);
+        return null;
+    }
+
+    // A chain of operators down the left is shifted in a loop, like the other passes walk it.
+    private void shiftChain(Expr expr){
+        List<Expr> spine = OperatorChain.spine(expr);
+        shift(OperatorChain.left(spine.get(spine.size() - 1)));
+        for (int i = spine.size() - 1; i >= 0; i--){
+            Expr operator = spine.get(i);
+            if (i > 0) operator.line += shift;      // expr itself was shifted by shift(Expr)
+            shift(operator instanceof Expr.Binary
+                    ? ((Expr.Binary) operator).operator
+                    : ((Expr.Logical) operator).operator);
+            shift(OperatorChain.right(operator));
+        }
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr){
+        shift(expr.callee);
+        shift(expr.paren);
+        for (Expr argument : expr.arguments){
+            shift(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr){
+        shift(expr.object);
+        shift(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr){
+        shift(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr){
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr){
+        shiftChain(expr);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr){
+        shift(expr.object);
+        shift(expr.name);
+        shift(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr){
+        shift(expr.keyword);
+        shift(expr.method);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr){
+        shift(expr.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr){
+        shift(expr.operator);
+        shift(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr){
+        shift(expr.name);
+        return null;
+    }
+}
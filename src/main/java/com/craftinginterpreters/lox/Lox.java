@@ -3,19 +3,42 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
+    private static Engine engine;
+    private static final ModuleLoader loader = new ModuleLoader();
+    // Set by errors outside the front end of a loaded module, and by the ModuleLoader when a load fails.
+    static volatile boolean hadError = false;
     static boolean hadRuntimeError = false;
+    // Standard input, shared by the REPL and readLine(), so that neither one buffers lines meant for the other.
+    private static BufferedReader stdin;
+
+    private static final String USAGE = "Usage: jlox [--engine=tree|closure|vm] [script]";
 
     public static void main(String[] args) throws IOException{
+        String engineName = "tree";
+        if (args.length > 0 && args[0].startsWith("--engine=")) {
+            engineName = args[0].substring("--engine=".length());
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        engine = newEngine(engineName);
+        if (engine == null) {
+            System.out.println(USAGE);
+            System.exit(64);
+        }
+
         if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+            System.out.println(USAGE);
             System.exit(64);
         } else if (args.length == 1) {
             runFile(args[0]);
@@ -25,44 +48,75 @@ public class Lox {
         }
     }
 
+    // The engine named by --engine=, or null if there is no such engine.
+    static Engine newEngine(String name){
+        switch (name) {
+            case "tree": return new Interpreter();
+            case "closure": return new ClosureCompiler();
+            case "vm": return new VM();
+        }
+        return null;
+    }
+
     private static void runFile(String path) throws IOException{
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        run(engine, loader.load(Paths.get(path)));
         if (hadError) System.exit(65);
         if (hadRuntimeError) System.exit(70);
     }
 
+    static BufferedReader stdin(){
+        if (stdin == null) stdin = new BufferedReader(new InputStreamReader(System.in));
+        return stdin;
+    }
+
     private static void runPrompt() throws  IOException{
-        InputStreamReader input = new InputStreamReader(System.in);
-        BufferedReader reader = new BufferedReader(input);
+        BufferedReader reader = stdin();
 
+        // The session is one growing document, so each line only goes through the front end once.
+        Document session = new Document();
         for (;;){
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+
+            int before = session.text().length();
+            List<Document.Declaration> entered = session.update(before, before, line + "\n");
+            if (!entered.isEmpty() && entered.get(0).start < before){
+                error(entered.get(0).line, "Can't continue a statement from an earlier line.");
+            }
+            if (hadError){
+                // Blank the line out, so it doesn't break the lines after it and they keep their line numbers.
+                session.update(before, session.text().length(), "\n");
+            } else {
+                run(engine, loader.load(session.statements(entered)));
+            }
             hadError = false;
         }
     }
 
-    private static void run(String source){
-
-        // Scanner: From source code -> list of Tokens (Lexical Analysis)
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+    // The file is memory-mapped. An ASCII file, in a charset that agrees with ASCII, is scanned in place; any other
+    // is decoded into one CharBuffer, which costs two bytes of heap per character for as long as it is scanned.
+    static CharSequence readSource(Path path) throws IOException{
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Charset charset = Charset.defaultCharset();
+            boolean asciiCompatible = charset.equals(StandardCharsets.UTF_8)
+                    || charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.ISO_8859_1);
+            if (asciiCompatible && MappedSource.isAscii(bytes)) return new MappedSource(bytes);
+            return charset.decode(bytes);
+        }
+    }
 
-        // Parser: From list of Tokens -> List of Statements (each an Abstract Syntax Tree) (Syntactic analysis)
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        if (hadError) return;
+    // The ModuleLoader runs the front end (Scanner, Parser, Resolver) on the program and the modules it imports,
+    // and returns null when any of them has an error.
+    static void run(Engine engine, List<Stmt> program){
+        if (program == null) return;
 
-        // Resolver: Feeds some information to the interpreter (Semantics analysis)
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        if (hadError) return;;
+        // Optimizer: Folds constants and drops dead code, with the same results and runtime errors
+        program = new Optimizer().optimize(program);
 
-        // Interpreter: From list of Statements -> Evaluation
-        interpreter.interpret(statements);
+        // Engine: From list of Statements -> Evaluation (tree-walking Interpreter, closure compiler or bytecode VM)
+        engine.interpret(program);
     }
 
     static void error(int line, String message){
@@ -79,12 +133,35 @@ public class Lox {
     }
 
     static void runTimeError(RuntimeError error){
-        System.err.println(error.getMessage() + "\n[line" + error.token.line + "]");
+        System.err.println(error.getMessage() + "\n[line" + error.line + "]");
         hadRuntimeError = true;
     }
 
+    // An error about a whole module rather than a line of it.
+    static void error(String message){
+        String file = file();
+        report((file.isEmpty() ? "" : "[" + file.trim() + "] ") + "Error: " + message);
+    }
+
     static void report(int line, String where, String message){
-        System.err.println("[line " + line + "] Error " + where + ": " + message);
-        hadError = true;
+        report("[" + file() + "line " + line + "] Error " + where + ": " + message);
+    }
+
+    // Errors in an imported module name its file. They count against the module, which the ModuleLoader checks,
+    // rather than against the whole run.
+    private static synchronized void report(String error){
+        System.err.println(error);
+        ModuleLoader.Module module = ModuleLoader.compiling();
+        if (module != null){
+            module.hadError = true;
+        } else {
+            hadError = true;
+        }
+    }
+
+    private static String file(){
+        ModuleLoader.Module module = ModuleLoader.compiling();
+        if (module == null || module.importedAt == null) return "";
+        return module.name() + " ";
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Growable array value, made by the 'array' native. While every element is a number they are kept unboxed in a
+// double[]; the first other value moves them to an Object[] for good.
+class LoxArray {
+    private static final int INITIAL_CAPACITY = 8;
+    private static final double[] NO_NUMBERS = new double[0];
+
+    private double[] numbers = NO_NUMBERS;     // null once the elements are boxed
+    private Object[] values;
+    private int count = 0;
+    private boolean printing = false;
+
+    int length(){
+        return count;
+    }
+
+    Object get(Object index){
+        int i = index(index);
+        return numbers != null ? (Object) numbers[i] : values[i];
+    }
+
+    void set(Object index, Object value){
+        int i = index(index);
+        if (numbers != null){
+            if (value instanceof Double){
+                numbers[i] = (double) value;
+                return;
+            }
+            box();
+        }
+        values[i] = value;
+    }
+
+    void append(Object value){
+        if (numbers != null){
+            if (value instanceof Double){
+                if (count == numbers.length){
+                    numbers = Arrays.copyOf(numbers, Math.max(INITIAL_CAPACITY, count * 2));
+                }
+                numbers[count++] = (double) value;
+                return;
+            }
+            box();
+        }
+        if (count == values.length){
+            values = Arrays.copyOf(values, Math.max(INITIAL_CAPACITY, count * 2));
+        }
+        values[count++] = value;
+    }
+
+    private void box(){
+        values = new Object[Math.max(INITIAL_CAPACITY, numbers.length)];
+        for (int i = 0; i < count; i++){
+            values[i] = numbers[i];
+        }
+        numbers = null;
+    }
+
+    private int index(Object index){
+        if (!(index instanceof Double) || (double) index != Math.floor((double) index)){
+            throw new NativeError("Array index must be an integer.");
+        }
+        double i = (double) index;
+        if (i < 0 || i >= count){
+            throw new NativeError("Array index out of bounds.");
+        }
+        return (int) i;
+    }
+
+    // An array holding itself is printed as [...] the second time round.
+    @Override
+    public String toString(){
+        if (printing) return "[...]";
+
+        printing = true;
+        try {
+            StringBuilder text = new StringBuilder("[");
+            for (int i = 0; i < count; i++){
+                if (i > 0) text.append(", ");
+                text.append(Interpreter.stringify(numbers != null ? (Object) numbers[i] : values[i]));
+            }
+            return text.append("]").toString();
+        } finally {
+            printing = false;
+        }
+    }
+}
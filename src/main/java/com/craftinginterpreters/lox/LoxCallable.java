@@ -1,8 +1,32 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public interface LoxCallable {
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+    Object call(Engine engine, List<Object> arguments);
+
+    // Entry points for a known number of arguments, so a call site needs no argument list. The caller has already
+    // checked the arity. Functions write the arguments straight into their frame; other callables get a list.
+    default Object call0(Engine engine){
+        return call(engine, Collections.emptyList());
+    }
+
+    default Object call1(Engine engine, Object a0){
+        return call(engine, Arrays.asList(a0));
+    }
+
+    default Object call2(Engine engine, Object a0, Object a1){
+        return call(engine, Arrays.asList(a0, a1));
+    }
+
+    default Object call3(Engine engine, Object a0, Object a1, Object a2){
+        return call(engine, Arrays.asList(a0, a1, a2));
+    }
+
+    default Object callN(Engine engine, Object... arguments){
+        return call(engine, Arrays.asList(arguments));
+    }
 }
@@ -1,29 +1,30 @@
 package com.craftinginterpreters.lox;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class LoxClass implements LoxCallable{
     final String name;
     final LoxClass superclass;
-    private final Map<String, LoxFunction> methods;
+    private final Map<Symbol, LoxMethod> methods;
+    private final LoxMethod initializer;
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods){
+    LoxClass(String name, LoxClass superclass, Map<Symbol, LoxMethod> methods){
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
-    }
-
-    LoxFunction findMethod(String name){
-        if (methods.containsKey(name)){
-            return methods.get(name);
-        }
 
+        // Flattened method table: inherited methods first, so the class's own ones override them.
+        this.methods = new HashMap<>();
         if (superclass != null){
-            return superclass.findMethod(name);
+            this.methods.putAll(superclass.methods);
         }
+        this.methods.putAll(methods);
+        this.initializer = this.methods.get(Symbol.INIT);
+    }
 
-        return null;
+    LoxMethod findMethod(Symbol name){
+        return methods.get(name);
     }
 
     @Override
@@ -33,7 +34,6 @@ public class LoxClass implements LoxCallable{
 
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null){
             return 0;
         }
@@ -41,13 +41,50 @@ public class LoxClass implements LoxCallable{
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call(Engine engine, List<Object> arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null){
+            initializer.invoke(engine, instance, arguments);
+        }
+
+        return instance;
+    }
+
+    @Override
+    public Object call0(Engine engine){
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null){
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke0(engine, instance);
         }
+        return instance;
+    }
 
+    // With arguments, the arity check has made sure there is an initializer to take them.
+    @Override
+    public Object call1(Engine engine, Object a0){
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke1(engine, instance, a0);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Engine engine, Object a0, Object a1){
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke2(engine, instance, a0, a1);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Engine engine, Object a0, Object a1, Object a2){
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invoke3(engine, instance, a0, a1, a2);
+        return instance;
+    }
+
+    @Override
+    public Object callN(Engine engine, Object... arguments){
+        LoxInstance instance = new LoxInstance(this);
+        initializer.invokeN(engine, instance, arguments);
         return instance;
     }
 }
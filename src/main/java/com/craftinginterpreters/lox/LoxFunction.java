@@ -1,51 +1,34 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
-public class LoxFunction implements LoxCallable{
+public class LoxFunction extends FrameFunction {
 
     private final Stmt.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    private final Interpreter interpreter;     // The engine that declared the function runs its body
 
-    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer){
-        this.declaration = declaration;
-        this.closure = closure;
-        this.isInitializer = isInitializer;
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, Interpreter interpreter){
+        this(declaration, closure, isInitializer, interpreter, null);
     }
 
-    LoxFunction bind(LoxInstance instance){
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+    private LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+                        Interpreter interpreter, LoxInstance receiver){
+        super(closure, receiver, declaration.frameSize, isInitializer);
+        this.declaration = declaration;
+        this.interpreter = interpreter;
     }
 
+    @Override
+    public LoxFunction bind(LoxInstance instance){
+        return new LoxFunction(declaration, closure, isInitializer, interpreter, instance);
+    }
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return declaration.params.length;
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-
-        for (int i = 0; i < declaration.params.size(); i++){
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
-
-        try{
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnObject){
-            if (isInitializer) return closure.getAt(0, "this");
-
-            return returnObject.value;
-        }
-
-        if (isInitializer){
-            return closure.getAt(0, "this");
-        }
-        return null;
+    Object run(Environment frame){
+        return interpreter.executeBlock(declaration.body, frame);
     }
 
     @Override
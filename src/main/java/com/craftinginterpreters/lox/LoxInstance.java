@@ -1,11 +1,13 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
-    private LoxClass klass;
-    private Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    final LoxClass klass;
+    Shape shape = Shape.EMPTY;
+    Object[] fields = NO_FIELDS;
 
     LoxInstance(LoxClass klass){
         this.klass = klass;
@@ -17,17 +19,43 @@ public class LoxInstance {
     }
 
     public Object get(Token name){
-        if (fields.containsKey(name.lexeme)){
-            return fields.get(name.lexeme);
+        int index = shape.indexOf(name.symbol);
+        if (index >= 0){
+            return fields[index];
         }
 
-        LoxFunction method = klass.findMethod(name.lexeme);
-        if (method != null) return method.bind(this);
+        return getMethod(name);
+    }
+
+    Object getMethod(Token name){
+        return findMethod(name).bind(this);
+    }
+
+    // The unbound method, for call sites that invoke it right away.
+    LoxMethod findMethod(Token name){
+        LoxMethod method = klass.findMethod(name.symbol);
+        if (method != null) return method;
 
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
     public void set(Token name, Object value){
-        fields.put(name.lexeme, value);
+        int index = shape.indexOf(name.symbol);
+        if (index >= 0){
+            fields[index] = value;
+            return;
+        }
+
+        addField(shape.withField(name.symbol), value);
+    }
+
+    // Moves to a shape with one more field, which goes in the last slot.
+    void addField(Shape next, Object value){
+        int index = shape.fieldCount();
+        if (index == fields.length){
+            fields = Arrays.copyOf(fields, Math.max(4, index * 2));
+        }
+        fields[index] = value;
+        shape = next;
     }
 }
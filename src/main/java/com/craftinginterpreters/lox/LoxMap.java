@@ -0,0 +1,181 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Hash map value, made by the 'map' native. Keys are any Lox values, compared like '==' does: strings and numbers
+// by value, ropes like the strings they spell, instances and functions by identity.
+// Entries are kept in insertion order in parallel arrays, which is also the order they are iterated in. The hash
+// table only holds entry numbers and is searched by linear probing; it is kept at most half full. A removed entry
+// leaves a hole in the entry arrays until the next resize, but its table slot is freed at once by shifting the
+// slots after it back, so lookups never step over deleted slots.
+class LoxMap {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Marks a removed entry.
+    private static final Object REMOVED = new Object();
+
+    private int[] table = new int[INITIAL_CAPACITY * 2];   // Entry number + 1, or 0 when free
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int entries = 0;    // Used entries, removed ones included
+    private int size = 0;
+    private boolean printing = false;
+
+    int size(){
+        return size;
+    }
+
+    Object get(Object key){
+        int slot = find(key, hash(key));
+        return slot < 0 ? null : values[table[slot] - 1];
+    }
+
+    boolean has(Object key){
+        return find(key, hash(key)) >= 0;
+    }
+
+    void set(Object key, Object value){
+        // A rope key is flattened once here rather than on every comparison.
+        if (key instanceof Rope) key = key.toString();
+
+        int hash = hash(key);
+        int slot = find(key, hash);
+        if (slot >= 0){
+            values[table[slot] - 1] = value;
+            return;
+        }
+
+        if (entries == keys.length) resize();
+        hashes[entries] = hash;
+        keys[entries] = key;
+        values[entries] = value;
+        entries++;
+        size++;
+        insert(hash, entries);
+    }
+
+    // True if the key was there.
+    boolean remove(Object key){
+        int slot = find(key, hash(key));
+        if (slot < 0) return false;
+
+        int entry = table[slot] - 1;
+        keys[entry] = REMOVED;
+        values[entry] = null;
+        size--;
+
+        // Moves back every slot of the probe run after the freed one that may no longer be reached from its
+        // home slot.
+        int mask = table.length - 1;
+        int free = slot;
+        for (int next = (free + 1) & mask; table[next] != 0; next = (next + 1) & mask){
+            int home = hashes[table[next] - 1] & mask;
+            boolean reachable = free <= next ? free < home && home <= next : free < home || home <= next;
+            if (!reachable){
+                table[free] = table[next];
+                free = next;
+            }
+        }
+        table[free] = 0;
+        return true;
+    }
+
+    void clear(){
+        Arrays.fill(table, 0);
+        Arrays.fill(keys, 0, entries, null);
+        Arrays.fill(values, 0, entries, null);
+        entries = 0;
+        size = 0;
+    }
+
+    // Merging a map into itself only sets keys it already has, so its entries don't move under the loop.
+    void putAll(LoxMap other){
+        for (int i = 0; i < other.entries; i++){
+            if (other.keys[i] != REMOVED) set(other.keys[i], other.values[i]);
+        }
+    }
+
+    LoxArray keys(){
+        LoxArray array = new LoxArray();
+        for (int i = 0; i < entries; i++){
+            if (keys[i] != REMOVED) array.append(keys[i]);
+        }
+        return array;
+    }
+
+    LoxArray values(){
+        LoxArray array = new LoxArray();
+        for (int i = 0; i < entries; i++){
+            if (keys[i] != REMOVED) array.append(values[i]);
+        }
+        return array;
+    }
+
+    // The table slot holding the key, or -1.
+    private int find(Object key, int hash){
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask){
+            int entry = table[slot] - 1;
+            if (hashes[entry] == hash && Interpreter.isEqual(keys[entry], key)) return slot;
+        }
+        return -1;
+    }
+
+    private void insert(int hash, int entryNumber){
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = entryNumber;
+    }
+
+    // Drops the removed entries, and doubles the capacity unless that freed at least a quarter of it.
+    private void resize(){
+        int capacity = size * 4 / 3 < keys.length ? keys.length : keys.length * 2;
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldEntries = entries;
+
+        table = new int[capacity * 2];
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        entries = 0;
+        for (int i = 0; i < oldEntries; i++){
+            if (oldKeys[i] == REMOVED) continue;
+            hashes[entries] = oldHashes[i];
+            keys[entries] = oldKeys[i];
+            values[entries] = oldValues[i];
+            entries++;
+            insert(oldHashes[i], entries);
+        }
+    }
+
+    // Equal keys hash alike: a rope hashes like its String, and other values use their equals()' hashCode().
+    private static int hash(Object key){
+        if (key == null) return 0;
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString(){
+        if (printing) return "{...}";
+
+        printing = true;
+        try {
+            StringBuilder text = new StringBuilder("{");
+            boolean first = true;
+            for (int i = 0; i < entries; i++){
+                if (keys[i] == REMOVED) continue;
+                if (!first) text.append(", ");
+                first = false;
+                text.append(Interpreter.stringify(keys[i])).append(": ").append(Interpreter.stringify(values[i]));
+            }
+            return text.append("}").toString();
+        } finally {
+            printing = false;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public interface LoxMethod extends LoxCallable {
+    LoxMethod bind(LoxInstance instance);
+
+    // Calls the method with 'this' set to the receiver, without creating a bound method first.
+    Object invoke(Engine engine, LoxInstance receiver, List<Object> arguments);
+
+    // Fixed-arity forms of invoke(), like LoxCallable's call0() to callN().
+    default Object invoke0(Engine engine, LoxInstance receiver){
+        return invoke(engine, receiver, Collections.emptyList());
+    }
+
+    default Object invoke1(Engine engine, LoxInstance receiver, Object a0){
+        return invoke(engine, receiver, Arrays.asList(a0));
+    }
+
+    default Object invoke2(Engine engine, LoxInstance receiver, Object a0, Object a1){
+        return invoke(engine, receiver, Arrays.asList(a0, a1));
+    }
+
+    default Object invoke3(Engine engine, LoxInstance receiver, Object a0, Object a1, Object a2){
+        return invoke(engine, receiver, Arrays.asList(a0, a1, a2));
+    }
+
+    default Object invokeN(Engine engine, LoxInstance receiver, Object... arguments){
+        return invoke(engine, receiver, Arrays.asList(arguments));
+    }
+}
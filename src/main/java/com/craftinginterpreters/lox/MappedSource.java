@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// The characters of an ASCII source file, read straight from its memory mapping. An ASCII byte is the same character
+// in every charset a Lox file may be in, so nothing needs decoding and the file never gets copied onto the heap:
+// only the lexemes the scanner takes out of it do.
+final class MappedSource implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    MappedSource(ByteBuffer bytes){
+        this(bytes, 0, bytes.limit());
+    }
+
+    private MappedSource(ByteBuffer bytes, int offset, int length){
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    static boolean isAscii(ByteBuffer bytes){
+        for (int i = 0, limit = bytes.limit(); i < limit; i++){
+            if (bytes.get(i) < 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int length(){
+        return length;
+    }
+
+    @Override
+    public char charAt(int index){
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        return (char) bytes.get(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end){
+        if (start < 0 || start > end || end > length) throw new IndexOutOfBoundsException();
+        return new MappedSource(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString(){
+        byte[] copy = new byte[length];
+        bytes.get(offset, copy);
+        return new String(copy, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,185 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+
+// Loads a program split over several files with 'import "path";'. Every imported module is scanned, parsed and
+// resolved as its own task on a ForkJoinPool. The modules are then linked into one list of statements, where each
+// module comes after the modules it imports. Paths are relative to the importing file's directory (the working
+// directory for the REPL). A module is linked at most once in the loader's lifetime, so it is evaluated exactly
+// once even when it is imported many times or through a cycle.
+// Each module keeps its own error flag, set by the errors reported while its front end runs, and the load fails if
+// any module of it has one.
+class ModuleLoader {
+
+    static class Module {
+        final Path path;                // null for a REPL line
+        final Token importedAt;         // the path in the first import that named it; null for the main program
+        final Module importer;
+        final List<Path> imports = new ArrayList<>();
+        List<Stmt> statements = List.of();
+        volatile boolean hadError = false;
+
+        Module(Path path, Token importedAt, Module importer){
+            this.path = path;
+            this.importedAt = importedAt;
+            this.importer = importer;
+        }
+
+        // How errors name the module's file: relative to the working directory when it is below it.
+        String name(){
+            return Paths.get("").toAbsolutePath().relativize(path).toString();
+        }
+    }
+
+    // The module whose front end runs on this thread, which the errors reported on it belong to.
+    private static final ThreadLocal<Module> compiling = new ThreadLocal<>();
+
+    private final AstCache cache = new AstCache();
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final Map<Path, Module> modules = new ConcurrentHashMap<>();
+    private final Set<Path> linked = new HashSet<>();
+
+    // Returns null when any module has an error.
+    List<Stmt> load(Path file) throws IOException {
+        file = file.toAbsolutePath().normalize();
+        CharSequence source = Lox.readSource(file);
+        Module main = new Module(file, null, null);
+        modules.put(file, main);
+        return load(main, source);
+    }
+
+    // Statements that have already been through the front end, like the new declarations of a REPL session.
+    List<Stmt> load(List<Stmt> statements){
+        Module main = new Module(null, null, null);
+        main.statements = statements;
+        Phaser pending = new Phaser(1);
+        loadImports(main, pending);
+        return link(main, pending);
+    }
+
+    private List<Stmt> load(Module main, CharSequence source){
+        // One party for this thread, plus one for each module task still running.
+        Phaser pending = new Phaser(1);
+        frontEnd(main, source, pending);
+        return link(main, pending);
+    }
+
+    private List<Stmt> link(Module main, Phaser pending){
+        pending.arriveAndAwaitAdvance();
+
+        boolean hadError = main.hadError;
+        for (Module module : modules.values()){
+            hadError |= module.hadError;
+        }
+        if (hadError){
+            Lox.hadError = true;
+            // Forget the modules of the failed load, so they are read again next time.
+            modules.keySet().retainAll(linked);
+            return null;
+        }
+
+        List<Stmt> program = new ArrayList<>();
+        link(main, program);
+        return program;
+    }
+
+    // The module reporting errors on this thread, or null outside the front end of a loaded module.
+    static Module compiling(){
+        return compiling.get();
+    }
+
+    private void frontEnd(Module module, CharSequence source, Phaser pending){
+        compiling.set(module);
+        try {
+            // A file seen before with the same contents is loaded already resolved.
+            String key = module.path == null ? null : cache.key(source);
+            List<Stmt> statements = key == null ? null : cache.load(key);
+
+            if (statements == null){
+                // Scanner + Parser: From source code -> List of Statements, tokens scanned as the parser needs them
+                statements = new Parser(new Scanner(source)).parse();
+                if (module.hadError) return;
+
+                // Resolver: Feeds some information to the engines (Semantics analysis)
+                new Resolver().resolve(statements);
+                if (module.hadError) return;
+                if (key != null) cache.store(key, statements);
+            }
+            module.statements = statements;
+        } catch (RuntimeException | StackOverflowError error){
+            // A failure of the front end itself. The module must fail the load rather than link as empty.
+            Lox.error("Can't compile module: " + error + ".");
+            return;
+        } finally {
+            compiling.remove();
+        }
+        loadImports(module, pending);
+    }
+
+    private void loadImports(Module module, Phaser pending){
+        Path directory = module.path == null ? Paths.get("") : module.path.getParent();
+        for (Stmt statement : module.statements){
+            if (!(statement instanceof Stmt.Import)) continue;
+
+            Token name = ((Stmt.Import) statement).path;
+            Path path = directory.resolve((String) name.literal).toAbsolutePath().normalize();
+            module.imports.add(path);
+
+            Module imported = new Module(path, name, module);
+            if (modules.putIfAbsent(path, imported) == null){
+                pending.register();
+                pool.execute(() -> {
+                    try {
+                        CharSequence importedSource = read(imported);
+                        if (importedSource != null) frontEnd(imported, importedSource, pending);
+                    } catch (RuntimeException | StackOverflowError error){
+                        // Anything thrown out of the task would only reach the pool.
+                        compiling.set(imported);
+                        try {
+                            Lox.error("Can't load module: " + error + ".");
+                        } finally {
+                            compiling.remove();
+                        }
+                    } finally {
+                        pending.arriveAndDeregister();
+                    }
+                });
+            }
+        }
+    }
+
+    // A module that can't be read is an error in the import that names it.
+    private CharSequence read(Module module){
+        try {
+            return Lox.readSource(module.path);
+        } catch (IOException error){
+            compiling.set(module.importer);
+            try {
+                Lox.error(module.importedAt, "Can't read module " + module.importedAt.lexeme + ".");
+            } finally {
+                compiling.remove();
+            }
+            return null;
+        }
+    }
+
+    // Dependencies first. A module already linked, or being linked further up an import cycle, is skipped.
+    private void link(Module module, List<Stmt> program){
+        if (module.path != null && !linked.add(module.path)) return;
+
+        for (Path path : module.imports){
+            link(modules.get(path), program);
+        }
+        program.addAll(module.statements);
+    }
+}
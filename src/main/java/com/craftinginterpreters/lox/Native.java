@@ -0,0 +1,14 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a static method as a native function, to be bound as a global by NativeFunction.define().
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Native {
+    // The global's name, when it isn't the method's.
+    String value() default "";
+}
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.lox;
+
+// Thrown by a native function, which doesn't know where it was called from. The engine making the call reports it
+// as a RuntimeError at the call.
+class NativeError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    NativeError(String message){
+        super(message);
+    }
+}
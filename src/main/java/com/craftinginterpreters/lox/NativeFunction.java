@@ -0,0 +1,225 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// A static Java method bound as a Lox function. The method is looked up once, when it is defined, and its handle is
+// adapted to take and return plain Lox values: each parameter gets a converter that checks the argument's type,
+// and numbers returned are boxed, reusing the boxes of small integers. A call is then a single invokeExact() with
+// no reflection or argument list; more than three parameters are spread from the argument array.
+final class NativeFunction implements LoxCallable {
+    private static final int SPREAD = 3;
+    private static final Double[] BOXES = new Double[256];
+
+    // Converters from a Lox value to each parameter type a native can declare, besides Object.
+    private static final Map<Class<?>, MethodHandle> CONVERTERS = new HashMap<>();
+
+    private static final MethodHandle BOX_DOUBLE;
+    private static final MethodHandle BOX_INT;
+
+    static {
+        for (int i = 0; i < BOXES.length; i++){
+            BOXES[i] = (double) i;
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CONVERTERS.put(double.class, converter(lookup, "number", double.class));
+            CONVERTERS.put(int.class, converter(lookup, "integer", int.class));
+            CONVERTERS.put(String.class, converter(lookup, "string", String.class));
+            CONVERTERS.put(LoxArray.class, converter(lookup, "array", LoxArray.class));
+            CONVERTERS.put(LoxMap.class, converter(lookup, "map", LoxMap.class));
+            BOX_DOUBLE = lookup.findStatic(NativeFunction.class, "box", MethodType.methodType(Object.class, double.class));
+            BOX_INT = lookup.findStatic(NativeFunction.class, "box", MethodType.methodType(Object.class, int.class));
+        } catch (ReflectiveOperationException error){
+            throw new ExceptionInInitializerError(error);
+        }
+    }
+
+    private final String name;
+    private final int arity;
+    private final MethodHandle handle;  // (Object...)Object, or (Object[])Object past SPREAD parameters
+
+    private NativeFunction(String name, int arity, MethodHandle handle){
+        this.name = name;
+        this.arity = arity;
+        this.handle = handle;
+    }
+
+    // Defines a global for every method of 'library' annotated with @Native.
+    static void define(Environment globals, Class<?> library){
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method method : library.getDeclaredMethods()){
+            Native annotation = method.getAnnotation(Native.class);
+            if (annotation == null) continue;
+
+            if (!Modifier.isStatic(method.getModifiers())){
+                throw new IllegalArgumentException("Native function " + method + " must be static.");
+            }
+            String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+            MethodHandle handle;
+            try {
+                handle = lookup.unreflect(method);
+            } catch (IllegalAccessException error){
+                throw new IllegalArgumentException("Native function " + method + " is not accessible.", error);
+            }
+            globals.define(Symbol.of(name), new NativeFunction(name, method.getParameterCount(), adapt(method, handle)));
+        }
+    }
+
+    private static MethodHandle adapt(Method method, MethodHandle handle){
+        Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++){
+            if (parameters[i] == Object.class) continue;
+
+            MethodHandle converter = CONVERTERS.get(parameters[i]);
+            if (converter == null){
+                throw new IllegalArgumentException("Native function " + method + " has a parameter of unsupported type " +
+                        parameters[i].getSimpleName() + ".");
+            }
+            handle = MethodHandles.filterArguments(handle, i, converter);
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == double.class){
+            handle = MethodHandles.filterReturnValue(handle, BOX_DOUBLE);
+        } else if (returnType == int.class){
+            handle = MethodHandles.filterReturnValue(handle, BOX_INT);
+        }
+
+        // Boxes booleans, and makes void methods return nil.
+        handle = handle.asType(MethodType.genericMethodType(parameters.length));
+        if (parameters.length > SPREAD){
+            handle = handle.asSpreader(Object[].class, parameters.length);
+        }
+        return handle;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Engine engine, List<Object> arguments) {
+        switch (arguments.size()){
+            case 0: return call0(engine);
+            case 1: return call1(engine, arguments.get(0));
+            case 2: return call2(engine, arguments.get(0), arguments.get(1));
+            case 3: return call3(engine, arguments.get(0), arguments.get(1), arguments.get(2));
+            default: return callN(engine, arguments.toArray());
+        }
+    }
+
+    @Override
+    public Object call0(Engine engine){
+        try {
+            return (Object) handle.invokeExact();
+        } catch (Throwable error){
+            throw unchecked(error);
+        }
+    }
+
+    @Override
+    public Object call1(Engine engine, Object a0){
+        try {
+            return (Object) handle.invokeExact(a0);
+        } catch (Throwable error){
+            throw unchecked(error);
+        }
+    }
+
+    @Override
+    public Object call2(Engine engine, Object a0, Object a1){
+        try {
+            return (Object) handle.invokeExact(a0, a1);
+        } catch (Throwable error){
+            throw unchecked(error);
+        }
+    }
+
+    @Override
+    public Object call3(Engine engine, Object a0, Object a1, Object a2){
+        try {
+            return (Object) handle.invokeExact(a0, a1, a2);
+        } catch (Throwable error){
+            throw unchecked(error);
+        }
+    }
+
+    @Override
+    public Object callN(Engine engine, Object... arguments){
+        try {
+            return (Object) handle.invokeExact(arguments);
+        } catch (Throwable error){
+            throw unchecked(error);
+        }
+    }
+
+    // Natives only throw unchecked exceptions, NativeError above all, but invokeExact() is declared to throw anything.
+    private static RuntimeException unchecked(Throwable error){
+        if (error instanceof RuntimeException) return (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        return new IllegalStateException(error);
+    }
+
+    @Override
+    public String toString(){
+        return "<native fn>";
+    }
+
+    // Converters
+
+    private static MethodHandle converter(MethodHandles.Lookup lookup, String name, Class<?> type)
+            throws ReflectiveOperationException {
+        return lookup.findStatic(NativeFunction.class, name, MethodType.methodType(type, Object.class));
+    }
+
+    private static double number(Object value){
+        if (value instanceof Double) return (double) value;
+        throw new NativeError("Expected a number.");
+    }
+
+    private static int integer(Object value){
+        if (value instanceof Double){
+            double number = (double) value;
+            if (number == (int) number) return (int) number;
+        }
+        throw new NativeError("Expected an integer.");
+    }
+
+    private static String string(Object value){
+        if (Rope.isString(value)) return value.toString();
+        throw new NativeError("Expected a string.");
+    }
+
+    private static LoxArray array(Object value){
+        if (value instanceof LoxArray) return (LoxArray) value;
+        throw new NativeError("Expected an array.");
+    }
+
+    private static LoxMap map(Object value){
+        if (value instanceof LoxMap) return (LoxMap) value;
+        throw new NativeError("Expected a map.");
+    }
+
+    // Negative zero isn't cached, so it keeps its sign.
+    private static Object box(double value){
+        int integer = (int) value;
+        if (integer == value && integer >= 0 && integer < BOXES.length && (integer != 0 || 1 / value > 0)){
+            return BOXES[integer];
+        }
+        return value;
+    }
+
+    private static Object box(int value){
+        if (value >= 0 && value < BOXES.length) return BOXES[value];
+        return (double) value;
+    }
+}
@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+
+// The native functions every engine defines as globals. A native is a static method annotated with @Native;
+// NativeFunction converts the arguments to the parameter types declared here, and the result back to a Lox value.
+class Natives {
+
+    static void define(Environment globals){
+        NativeFunction.define(globals, Natives.class);
+    }
+
+    @Native
+    static double clock(){
+        return (double)System.currentTimeMillis() / 1000.0;
+    }
+
+    // Math
+
+    @Native
+    static double abs(double x){
+        return Math.abs(x);
+    }
+
+    @Native
+    static double floor(double x){
+        return Math.floor(x);
+    }
+
+    @Native
+    static double sqrt(double x){
+        return Math.sqrt(x);
+    }
+
+    @Native
+    static double pow(double x, double y){
+        return Math.pow(x, y);
+    }
+
+    // Strings
+
+    @Native("string")
+    static String stringify(Object value){
+        return Interpreter.stringify(value);
+    }
+
+    // Nil unless the text is written like a number literal: no sign, exponent or surrounding spaces.
+    @Native
+    static Object number(String text){
+        if (!Scanner.isNumber(text)) return null;
+        return Double.parseDouble(text);
+    }
+
+    @Native
+    static int stringLength(String text){
+        return text.length();
+    }
+
+    @Native
+    static String substring(String text, int start, int end){
+        if (start < 0 || start > end || end > text.length()){
+            throw new NativeError("String index out of bounds.");
+        }
+        return text.substring(start, end);
+    }
+
+    @Native
+    static int indexOf(String text, String part){
+        return text.indexOf(part);
+    }
+
+    // Input and output
+
+    @Native
+    static void write(Object value){
+        System.out.print(Interpreter.stringify(value));
+        System.out.flush();
+    }
+
+    // The next line of the standard input, or nil at its end. In the REPL, the line after the one that called it.
+    @Native
+    static String readLine(){
+        try {
+            return Lox.stdin().readLine();
+        } catch (IOException error){
+            throw new NativeError("Could not read the input: " + error.getMessage());
+        }
+    }
+
+    // Arrays and maps
+
+    @Native
+    static LoxArray array(){
+        return new LoxArray();
+    }
+
+    @Native
+    static LoxMap map(){
+        return new LoxMap();
+    }
+
+    @Native
+    static void append(LoxArray array, Object value){
+        array.append(value);
+    }
+
+    @Native
+    static Object get(Object collection, Object key){
+        if (collection instanceof LoxMap) return ((LoxMap) collection).get(key);
+        return collection(collection).get(key);
+    }
+
+    @Native
+    static void set(Object collection, Object key, Object value){
+        if (collection instanceof LoxMap){
+            ((LoxMap) collection).set(key, value);
+        } else {
+            collection(collection).set(key, value);
+        }
+    }
+
+    @Native
+    static int length(Object collection){
+        if (collection instanceof LoxMap) return ((LoxMap) collection).size();
+        return collection(collection).length();
+    }
+
+    @Native
+    static boolean has(LoxMap map, Object key){
+        return map.has(key);
+    }
+
+    @Native
+    static boolean remove(LoxMap map, Object key){
+        return map.remove(key);
+    }
+
+    @Native
+    static LoxArray keys(LoxMap map){
+        return map.keys();
+    }
+
+    @Native
+    static LoxArray values(LoxMap map){
+        return map.values();
+    }
+
+    @Native
+    static void putAll(LoxMap map, LoxMap other){
+        map.putAll(other);
+    }
+
+    @Native
+    static void clear(LoxMap map){
+        map.clear();
+    }
+
+    // The array, for the functions that also take a map.
+    private static LoxArray collection(Object value){
+        if (value instanceof LoxArray) return (LoxArray) value;
+        throw new NativeError("Expected an array or a map.");
+    }
+}
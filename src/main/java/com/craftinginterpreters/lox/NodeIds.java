@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out the ids of new syntax tree nodes, for a Parser or the AST cache reader. Ids are unique across everything
+// built in the process, every module and Document declaration included, so a side table can key on them. Each
+// NodeIds takes them from the shared counter a block at a time, so creating a node costs no atomic operation, and the
+// ids stay close to dense: a block is only partly used by the last parse it serves.
+final class NodeIds {
+    private static final int BLOCK = 256;
+    private static final AtomicInteger blocks = new AtomicInteger();
+
+    private int next = 0;
+    private int limit = 0;
+
+    int next(){
+        if (next == limit){
+            next = blocks.getAndIncrement() * BLOCK;
+            limit = next + BLOCK;
+        }
+        return next++;
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+// Instruction set of the bytecode VM. Operands are unsigned 16-bit values, big-endian.
+// Local slots count from the first stack slot of the running frame; upvalues index the running closure's.
+final class OpCode {
+    static final byte CONSTANT = 0;         // index
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+    static final byte GET_LOCAL = 5;        // slot
+    static final byte SET_LOCAL = 6;        // slot
+    static final byte GET_GLOBAL = 7;       // name
+    static final byte SET_GLOBAL = 8;       // name
+    static final byte DEFINE = 9;           // name, defines a global
+    static final byte GET_PROPERTY = 10;    // name, inline cache
+    static final byte CHECK_INSTANCE = 11;
+    static final byte SET_PROPERTY = 12;    // name, inline cache
+    static final byte GET_SUPER = 13;       // name
+    static final byte EQUAL = 14;
+    static final byte NOT_EQUAL = 15;
+    static final byte GREATER = 16;
+    static final byte GREATER_EQUAL = 17;
+    static final byte LESS = 18;
+    static final byte LESS_EQUAL = 19;
+    static final byte ADD = 20;
+    static final byte SUBTRACT = 21;
+    static final byte MULTIPLY = 22;
+    static final byte DIVIDE = 23;
+    static final byte NOT = 24;
+    static final byte NEGATE = 25;
+    static final byte PRINT = 26;
+    static final byte JUMP = 27;            // forward offset
+    static final byte JUMP_IF_FALSE = 28;   // forward offset
+    static final byte LOOP = 29;            // backward offset
+    static final byte CALL = 30;            // argument count
+    static final byte CLOSURE = 31;         // function, then (is local, index) for each of its upvalues
+    static final byte RETURN = 32;
+    static final byte GET_UPVALUE = 33;     // index
+    static final byte SET_UPVALUE = 34;     // index
+    static final byte INHERIT = 35;
+    static final byte CLASS = 36;           // name, method count
+    static final byte GET_METHOD = 37;      // name, inline cache
+    static final byte INVOKE = 38;          // argument count
+    static final byte CLOSE_UPVALUE = 39;
+
+    private OpCode(){ }
+}
@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Binary and logical operators associate to the left, so a flat expression like 'a + b + c + ...' is a tree as deep
+// as it is long, all down its left side. The passes over the tree walk such a chain in a loop instead of recursing
+// down it, so its length isn't bounded by the Java stack. Only the right operands are visited recursively.
+final class OperatorChain {
+    private OperatorChain() { }
+
+    static boolean isOperator(Expr expr){
+        return expr instanceof Expr.Binary || expr instanceof Expr.Logical;
+    }
+
+    // The binary and logical operators down the left side of expr, from expr itself to the innermost one.
+    static List<Expr> spine(Expr expr){
+        List<Expr> spine = new ArrayList<>();
+        for (; isOperator(expr); expr = left(expr)){
+            spine.add(expr);
+        }
+        return spine;
+    }
+
+    // The left operand of a binary or logical operator.
+    static Expr left(Expr operator){
+        return operator instanceof Expr.Binary ? ((Expr.Binary) operator).left : ((Expr.Logical) operator).left;
+    }
+
+    static Expr right(Expr operator){
+        return operator instanceof Expr.Binary ? ((Expr.Binary) operator).right : ((Expr.Logical) operator).right;
+    }
+}
@@ -0,0 +1,366 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Simplifies resolved statements before they reach an engine: folds operators on literals, drops groupings,
+// removes branches and loops whose condition is a constant, and rewrites identities like 'x * 1' to 'x'. Nothing is
+// rewritten that could change a result or a runtime error: an operator on literals of the wrong types is kept so
+// that it still fails when it runs, and an identity is only applied to an operand that can only be a number.
+// Nodes are never modified: a node with a simplified child is rebuilt, keeping its id, its line and what the
+// resolver filled in.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements){
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements){
+            Stmt result = optimize(statement);
+            if (result != null) optimized.add(result);
+        }
+        return optimized;
+    }
+
+    // The same array when no statement changed.
+    private Stmt[] optimize(Stmt[] statements){
+        List<Stmt> optimized = new ArrayList<>(statements.length);
+        boolean changed = false;
+        for (Stmt statement : statements){
+            Stmt result = optimize(statement);
+            changed |= result != statement;
+            if (result != null) optimized.add(result);
+        }
+        return changed ? optimized.toArray(new Stmt[0]) : statements;
+    }
+
+    // Null when the statement does nothing.
+    private Stmt optimize(Stmt stmt){
+        return stmt.accept(this);
+    }
+
+    private Stmt optimizeBranch(Stmt stmt){
+        if (stmt == null) return null;
+        Stmt optimized = optimize(stmt);
+        if (optimized != null) return optimized;
+
+        Stmt.Block empty = rebuilt(stmt, new Stmt.Block(new Stmt[0]));
+        empty.scoped = false;
+        return empty;
+    }
+
+    private Expr optimize(Expr expr){
+        return expr == null ? null : expr.accept(this);
+    }
+
+    // Statements
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt){
+        Stmt[] statements = optimize(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+
+        Stmt.Block block = rebuilt(stmt, new Stmt.Block(statements));
+        block.scoped = stmt.scoped;
+        block.slots = stmt.slots;
+        return block;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt){
+        Stmt.Function[] methods = new Stmt.Function[stmt.methods.length];
+        boolean changed = false;
+        for (int i = 0; i < methods.length; i++){
+            methods[i] = (Stmt.Function) optimize(stmt.methods[i]);
+            changed |= methods[i] != stmt.methods[i];
+        }
+        if (!changed) return stmt;
+
+        Stmt.Class klass = rebuilt(stmt, new Stmt.Class(stmt.name, stmt.superclass, methods));
+        klass.slot = stmt.slot;
+        return klass;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt){
+        Expr expression = optimize(stmt.expression);
+        if (expression instanceof Expr.Literal) return null;
+        return expression == stmt.expression ? stmt : rebuilt(stmt, new Stmt.Expression(expression));
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt){
+        Stmt[] body = optimize(stmt.body);
+        if (body == stmt.body) return stmt;
+
+        Stmt.Function function = rebuilt(stmt, new Stmt.Function(stmt.name, stmt.params, body));
+        function.slot = stmt.slot;
+        function.frameSize = stmt.frameSize;
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt){
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal){
+            Stmt branch = Interpreter.isTruthy(((Expr.Literal) condition).value) ? stmt.thenBranch : stmt.elseBranch;
+            return branch == null ? null : optimize(branch);
+        }
+
+        Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+        Stmt elseBranch = optimizeBranch(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) return stmt;
+        return rebuilt(stmt, new Stmt.If(condition, thenBranch, elseBranch));
+    }
+
+    @Override
+    public Stmt visitImportStmt(Stmt.Import stmt){
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt){
+        Expr expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : rebuilt(stmt, new Stmt.Print(expression));
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt){
+        Expr value = optimize(stmt.value);
+        return value == stmt.value ? stmt : rebuilt(stmt, new Stmt.Return(stmt.keyword, value));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt){
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+
+        Stmt.Var var = rebuilt(stmt, new Stmt.Var(stmt.name, initializer));
+        var.slot = stmt.slot;
+        return var;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt){
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) return null;
+
+        Stmt body = optimizeBranch(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return rebuilt(stmt, new Stmt.While(condition, body));
+    }
+
+    // Expressions
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr){
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+
+        Expr.Assign assign = rebuilt(expr, new Expr.Assign(expr.name, value));
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr){
+        return optimizeChain(expr);
+    }
+
+    // A chain of operators down the left is optimized in a loop, innermost first, each operator taking the optimized
+    // operator below it as its left operand.
+    private Expr optimizeChain(Expr expr){
+        List<Expr> spine = OperatorChain.spine(expr);
+        Expr left = optimize(OperatorChain.left(spine.get(spine.size() - 1)));
+        for (int i = spine.size() - 1; i >= 0; i--){
+            Expr operator = spine.get(i);
+            left = operator instanceof Expr.Binary
+                    ? binary((Expr.Binary) operator, left)
+                    : logical((Expr.Logical) operator, left);
+        }
+        return left;
+    }
+
+    private Expr binary(Expr.Binary expr, Expr left){
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal){
+            Expr folded = fold(expr.operator, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (folded != null) return rebuilt(expr, folded);
+        }
+
+        // Identities that hold for every number, -0 and NaN included.
+        switch (expr.operator.type){
+            case STAR:
+                if (isNumber(right, 1) && left.numeric) return left;
+                if (isNumber(left, 1) && right.numeric) return right;
+                break;
+            case SLASH:
+                if (isNumber(right, 1) && left.numeric) return left;
+                break;
+            case MINUS:
+                if (isNumber(right, 0) && left.numeric) return left;
+                break;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return rebuilt(expr, new Expr.Binary(left, expr.operator, right));
+    }
+
+    // The literal result, or null when the operator fails on these operands at runtime.
+    private static Expr fold(Token operator, Object left, Object right){
+        switch (operator.type){
+            case EQUAL_EQUAL: return new Expr.Literal(Interpreter.isEqual(left, right));
+            case BANG_EQUAL: return new Expr.Literal(!Interpreter.isEqual(left, right));
+            case PLUS:
+                if (left instanceof String && right instanceof String){
+                    return new Expr.Literal((String) left + (String) right);
+                }
+                break;
+        }
+
+        if (!(left instanceof Double) || !(right instanceof Double)) return null;
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator.type){
+            case PLUS: return new Expr.Literal(a + b);
+            case MINUS: return new Expr.Literal(a - b);
+            case STAR: return new Expr.Literal(a * b);
+            case SLASH: return new Expr.Literal(a / b);
+            case GREATER: return new Expr.Literal(a > b);
+            case GREATER_EQUAL: return new Expr.Literal(a >= b);
+            case LESS: return new Expr.Literal(a < b);
+            case LESS_EQUAL: return new Expr.Literal(a <= b);
+        }
+        return null;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr){
+        Expr callee = optimize(expr.callee);
+        boolean changed = callee != expr.callee;
+
+        Expr[] arguments = new Expr[expr.arguments.length];
+        for (int i = 0; i < arguments.length; i++){
+            arguments[i] = optimize(expr.arguments[i]);
+            changed |= arguments[i] != expr.arguments[i];
+        }
+
+        return changed ? rebuilt(expr, new Expr.Call(callee, expr.paren, arguments)) : expr;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr){
+        Expr object = optimize(expr.object);
+        return object == expr.object ? expr : rebuilt(expr, new Expr.Get(object, expr.name));
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr){
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr){
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr){
+        return optimizeChain(expr);
+    }
+
+    private Expr logical(Expr.Logical expr, Expr left){
+        Expr right = optimize(expr.right);
+
+        // 'or' gives its left operand when it is truthy, 'and' when it is falsey, and the right operand otherwise.
+        if (left instanceof Expr.Literal){
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            boolean shortCircuits = expr.operator.type == TokenType.OR ? truthy : !truthy;
+            return shortCircuits ? left : right;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return rebuilt(expr, new Expr.Logical(left, expr.operator, right));
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr){
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return rebuilt(expr, new Expr.Set(object, expr.name, value));
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr){
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr){
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr){
+        Expr right = optimize(expr.right);
+
+        if (right instanceof Expr.Literal){
+            Object value = ((Expr.Literal) right).value;
+            if (expr.operator.type == TokenType.BANG){
+                return rebuilt(expr, new Expr.Literal(!Interpreter.isTruthy(value)));
+            }
+            if (value instanceof Double) return rebuilt(expr, new Expr.Literal(-(double) value));
+        }
+
+        // Negating twice, or negating a boolean twice, gives back the operand.
+        if (right instanceof Expr.Unary && ((Expr.Unary) right).operator.type == expr.operator.type){
+            Expr operand = ((Expr.Unary) right).right;
+            if (expr.operator.type == TokenType.MINUS ? operand.numeric : isBoolean(operand)) return operand;
+        }
+
+        return right == expr.right ? expr : rebuilt(expr, new Expr.Unary(expr.operator, right));
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr){
+        return expr;
+    }
+
+    // Helpers
+
+    private static <T extends Stmt> T rebuilt(Stmt original, T stmt){
+        stmt.id = original.id;
+        stmt.line = original.line;
+        return stmt;
+    }
+
+    private static <T extends Expr> T rebuilt(Expr original, T expr){
+        expr.id = original.id;
+        expr.line = original.line;
+        expr.numeric = original.numeric;
+        return expr;
+    }
+
+    private static boolean isNumber(Expr expr, double value){
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double
+                && (double) ((Expr.Literal) expr).value == value;
+    }
+
+    private static boolean isBoolean(Expr expr){
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Boolean;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == TokenType.BANG;
+        if (expr instanceof Expr.Binary){
+            switch (((Expr.Binary) expr).operator.type){
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    return true;
+            }
+        }
+        return false;
+    }
+}
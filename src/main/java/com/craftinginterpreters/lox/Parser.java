@@ -1,17 +1,43 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
 public class Parser {
     private static class ParseError extends RuntimeException { }
 
-    private final List<Token> tokens;
+    // Tokens scanned per window when parsing straight from a Scanner.
+    private static final int WINDOW = 4096;
+    // Deepest nesting accepted. The passes after the parser, and the engines, recurse on the Java stack, so deeper
+    // nesting is a compile error here rather than a stack overflow there. The left operand of a binary or logical
+    // operator isn't nested in it, as the passes walk a chain of them down the left in a loop.
+    private static final int MAX_DEPTH = 1000;
+
+    private final Scanner scanner;      // null when the tokens were all scanned up front
+    private final TokenBuffer tokens;
+    private final NodeIds ids;
     private int current = 0;
+    private int depth = 0;      // Statements the parser is inside, each a level of the tree
+
+    Parser (Scanner scanner){
+        this(scanner, new NodeIds());
+    }
 
-    Parser (List<Token> tokens){
+    // Pulls tokens from the scanner a window at a time, so only a bounded part of the token stream is in memory.
+    // Parsers that take their node ids from the same NodeIds, one after another, give out ids with no gaps between.
+    Parser (Scanner scanner, NodeIds ids){
+        this.scanner = scanner;
+        this.tokens = scanner.newBuffer();
+        this.ids = ids;
+        scanner.scan(tokens, WINDOW);
+    }
+
+    Parser (TokenBuffer tokens, NodeIds ids){
+        this.scanner = null;
         this.tokens = tokens;
+        this.ids = ids;
     }
 
     List<Stmt> parse(){
@@ -28,6 +54,7 @@ public class Parser {
             if (match(TokenType.VAR)) return varDeclaration();
             if (match(TokenType.CLASS)) return classDeclaration();
             if (match(TokenType.FUN)) return function("function");
+            if (match(TokenType.IMPORT)) return importDeclaration();
             return statement();
         } catch (ParseError error){
             synchronize();
@@ -36,23 +63,33 @@ public class Parser {
     }
 
     private Stmt varDeclaration(){
-        Token name = consume(TokenType.IDENTIFIER, "Expect variable name.");
+        consume(TokenType.IDENTIFIER, "Expect variable name.");
+        Token name = previous();
 
         Expr initializer = null;
         if (match(TokenType.EQUAL)){
             initializer = expression();
         }
         consume(TokenType.SEMICOLON, "Expected ';' after variable declaration.");
-        return new Stmt.Var(name, initializer);
+        return node(new Stmt.Var(name, initializer));
+    }
+
+    private Stmt importDeclaration(){
+        Token keyword = previous();
+        consume(TokenType.STRING, "Expect module path after 'import'.");
+        Token path = previous();
+        consume(TokenType.SEMICOLON, "Expect ';' after module path.");
+        return node(new Stmt.Import(keyword, path));
     }
 
     private Stmt classDeclaration(){
-        Token name = consume(TokenType.IDENTIFIER, "Expect class name.");
+        consume(TokenType.IDENTIFIER, "Expect class name.");
+        Token name = previous();
 
         Expr.Variable superclass = null;
         if (match(TokenType.LESS)){
             consume(TokenType.IDENTIFIER, "Expect superclass name");
-            superclass = new Expr.Variable(previous());
+            superclass = node(new Expr.Variable(previous()));
         }
 
         consume(TokenType.LEFT_BRACE, "Expect '{' before class body.");
@@ -63,12 +100,13 @@ public class Parser {
         }
 
         consume(TokenType.RIGHT_BRACE, "Expect '}' after class body.");
-        return new Stmt.Class(name, superclass, methods);
+        return node(new Stmt.Class(name, superclass, methods.toArray(new Stmt.Function[0])));
     }
 
     private Stmt.Function function(String kind){
         // Function name
-        Token name = consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        consume(TokenType.IDENTIFIER, "Expect " + kind + " name.");
+        Token name = previous();
 
         // Parameters
         consume(TokenType.LEFT_PAREN, "Expect '(' after " + kind + " name.");
@@ -78,28 +116,45 @@ public class Parser {
                 if (parameters.size() >= 255){
                     error(peek(), "Can't have more than 255 parameters.");
                 }
-                parameters.add(consume(TokenType.IDENTIFIER, "Expect parameter name."));
+                consume(TokenType.IDENTIFIER, "Expect parameter name.");
+                parameters.add(previous());
             } while (match(TokenType.COMMA));
         }
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters. ");
 
         // Body
         consume(TokenType.LEFT_BRACE, "Expect '{' before " + kind + " body.");
-        List<Stmt> body = block();
-        return new Stmt.Function(name, parameters, body);
+        enter();
+        try {
+            Stmt[] body = block();
+            return node(new Stmt.Function(name, parameters.toArray(new Token[0]), body));
+        } finally {
+            depth--;
+        }
     }
 
     private Stmt statement(){
-        if (match(TokenType.LEFT_BRACE)) return new Stmt.Block(block());
-        if (match(TokenType.IF)) return ifStatement();
-        if (match(TokenType.WHILE)) return whileStatement();
-        if (match(TokenType.FOR)) return forStatement();
-        if (match(TokenType.PRINT)) return printStatement();
-        if (match(TokenType.RETURN)) return returnStatement();
-        return expressionStatement();
+        enter();
+        try {
+            if (match(TokenType.LEFT_BRACE)) return at(previous().line, new Stmt.Block(block()));
+            if (match(TokenType.IF)) return ifStatement();
+            if (match(TokenType.WHILE)) return whileStatement();
+            if (match(TokenType.FOR)) return forStatement();
+            if (match(TokenType.PRINT)) return printStatement();
+            if (match(TokenType.RETURN)) return returnStatement();
+            return expressionStatement();
+        } finally {
+            depth--;
+        }
     }
 
-    private List<Stmt> block(){
+    // Goes a statement deeper. The caller leaves again with depth--, once the statement is parsed.
+    private void enter(){
+        if (depth == MAX_DEPTH) throw error(peek(), "Too much nesting.");
+        depth++;
+    }
+
+    private Stmt[] block(){
         List<Stmt> statements = new ArrayList<>();
 
         while (!check(TokenType.RIGHT_BRACE) && !isAtEnd()){
@@ -107,10 +162,11 @@ public class Parser {
         }
 
         consume(TokenType.RIGHT_BRACE, "Expected '} after block.");
-        return statements;
+        return statements.toArray(new Stmt[0]);
     }
 
     private Stmt ifStatement(){
+        int line = previous().line;
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'if'.");
         Expr condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
@@ -121,19 +177,21 @@ public class Parser {
             elseStatement = statement();
         }
 
-        return new Stmt.If(condition,thenStatement, elseStatement);
+        return at(line, new Stmt.If(condition,thenStatement, elseStatement));
     }
 
     private Stmt whileStatement(){
+        int line = previous().line;
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
 
-        return new Stmt.While(condition, body);
+        return at(line, new Stmt.While(condition, body));
     }
 
     private Stmt forStatement(){
+        int line = previous().line;
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'.");
 
         // Initializer parsing
@@ -165,27 +223,28 @@ public class Parser {
 
         // Increment handling
         if (increment != null){
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+            body = at(body.line, new Stmt.Block(new Stmt[]{ body, node(new Stmt.Expression(increment)) }));
         }
 
         // Condition handling
         if (condition == null){
-            condition = new Expr.Literal(true);
+            condition = at(line, new Expr.Literal(true));
         }
-        body = new Stmt.While(condition, body);
+        body = at(line, new Stmt.While(condition, body));
 
         // Initializer handling
         if (initializer != null){
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = at(line, new Stmt.Block(new Stmt[]{ initializer, body }));
         }
 
         return body;
     }
 
     private Stmt printStatement(){
+        int line = previous().line;
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(expr);
+        return at(line, new Stmt.Print(expr));
     }
 
     private Stmt returnStatement(){
@@ -195,165 +254,222 @@ public class Parser {
             value = expression();
         }
         consume(TokenType.SEMICOLON, "Expect ';' after return value.");
-        return new Stmt.Return(keyword, value);
+        return node(new Stmt.Return(keyword, value));
     }
 
     private Stmt expressionStatement(){
         Expr expr = expression();
         consume(TokenType.SEMICOLON, "Expect ';' after expression.");
-        return new Stmt.Expression(expr);
-    }
-
-    private Expr expression() {
-        return assignment();
-    }
-
-    private Expr assignment(){
-        Expr expr = or();
-
-        if (match(TokenType.EQUAL)){
-            Token equals = previous();
-            Expr value = assignment();
-
-            if (expr instanceof Expr.Variable){
-                Token name = ((Expr.Variable)expr).name;
-                return new Expr.Assign(name, value);
-            } else if (expr instanceof Expr.Get) {
-                Expr.Get get = (Expr.Get)expr;
-                return new Expr.Set(get.object, get.name, value);
+        return node(new Stmt.Expression(expr));
+    }
+
+    // Binding power of the operators, from loosest to tightest, as in clox.
+    private static final int PREC_ASSIGNMENT = 1;   // =
+    private static final int PREC_OR = 2;           // or
+    private static final int PREC_AND = 3;          // and
+    private static final int PREC_EQUALITY = 4;     // == !=
+    private static final int PREC_COMPARISON = 5;   // < > <= >=
+    private static final int PREC_TERM = 6;         // + -
+    private static final int PREC_FACTOR = 7;       // * /
+    private static final int PREC_UNARY = 8;        // ! -
+    private static final int PREC_CALL = 9;         // . ()
+
+    // An operator or bracket whose operand is being parsed.
+    private enum Pending {
+        GROUPING,
+        CALL,
+        UNARY,
+        BINARY,
+        ASSIGNMENT
+    }
+
+    private static final class Frame {
+        final Pending kind;
+        final int min;              // Loosest binary operator its operand may contain
+        final Token operator;       // Or the '(' of a grouping
+        final Expr left;            // Left operand, assignment target or callee
+        final List<Expr> arguments;
+        int height;                 // Nesting of left and the arguments so far
+
+        Frame(Pending kind, int min, Token operator, Expr left, int height){
+            this.kind = kind;
+            this.min = min;
+            this.operator = operator;
+            this.left = left;
+            this.arguments = kind == Pending.CALL ? new ArrayList<>() : null;
+            this.height = height;
+        }
+    }
+
+    // Operator-precedence (Pratt) parser for:
+    //   assignment -> ( call "." )? IDENTIFIER "=" assignment | logic_or ;
+    //   logic_or   -> logic_and ( "or" logic_and )* ;     logic_and  -> equality ( "and" equality )* ;
+    //   equality   -> comparison ( ( "!=" | "==" ) comparison )* ;
+    //   comparison -> term ( ( ">" | ">=" | "<" | "<=" ) term )? ;
+    //   term       -> factor ( ( "-" | "+" ) factor )* ;   factor     -> unary ( ( "/" | "*" ) unary )* ;
+    //   unary      -> ( "!" | "-" ) unary | call ;
+    //   call       -> primary ( "(" arguments? ")" | "." IDENTIFIER )* ;
+    // Operators and brackets still waiting for their right operand are kept on an explicit stack, so one call parses
+    // any nesting depth, and an operand costs no call per precedence level. The trees, and the errors, are the same
+    // as with one recursive method per rule. The nesting of each tree built is tracked, to hold it to MAX_DEPTH.
+    private Expr expression(){
+        Deque<Frame> pending = new ArrayDeque<>();
+
+        operand:
+        for (;;){
+            // Prefix operators and opening parentheses, then a primary expression
+            for (;;){
+                if (match(TokenType.BANG, TokenType.MINUS)){
+                    pending.push(new Frame(Pending.UNARY, PREC_UNARY, previous(), null, 0));
+                } else if (match(TokenType.LEFT_PAREN)){
+                    pending.push(new Frame(Pending.GROUPING, PREC_ASSIGNMENT, previous(), null, 0));
+                } else {
+                    break;
+                }
             }
-            error(equals, "Invalid assignment target.");    // No throw
-        }
-        return expr;
-    }
-
-    private Expr or(){
-        Expr expr = and();
-
-        while (match(TokenType.OR)){
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and(){
-        Expr expr = equality();
-
-        while (match(TokenType.AND)){
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr equality(){
-        Expr expr = comparison();
-
-        while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)){
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr comparison(){
-        Expr expr = term();
-
-        if (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)){
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr term(){
-        Expr expr = factor();
-
-        while (match(TokenType.MINUS, TokenType.PLUS)){
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
+            Expr expr = primary();
+            int precedence = PREC_CALL;     // Of the operator at the root of expr
+            int height = 1;                 // Nesting of expr
+
+            for (;;){
+                if (depth + height > MAX_DEPTH) throw error(previous(), "Too much nesting.");
+
+                if (precedence == PREC_CALL){
+                    if (match(TokenType.DOT)){
+                        consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
+                        expr = node(new Expr.Get(expr, previous()));
+                        height++;
+                        continue;
+                    }
+                    if (match(TokenType.LEFT_PAREN)){
+                        if (!match(TokenType.RIGHT_PAREN)){
+                            pending.push(new Frame(Pending.CALL, PREC_ASSIGNMENT, null, expr, height));
+                            continue operand;
+                        }
+                        expr = node(new Expr.Call(expr, previous(), new Expr[0]));
+                        height++;
+                        continue;
+                    }
+                }
 
-        return expr;
-    }
+                Frame frame = pending.peek();
+                int min = frame == null ? PREC_ASSIGNMENT : frame.min;
+
+                // A binary operator takes expr as its left operand if it binds at least as tightly as the context
+                // allows, and more loosely than the operator already at the root of expr. Comparisons don't chain.
+                int operator = precedence(tokens.type(current));
+                if (operator >= min && (operator < precedence
+                        || operator == precedence && operator != PREC_COMPARISON)){
+                    advance();
+                    pending.push(new Frame(Pending.BINARY, operator + 1, previous(), expr, height));
+                    continue operand;
+                }
 
-    private Expr factor(){
-        Expr expr = unary();
+                if (min == PREC_ASSIGNMENT && match(TokenType.EQUAL)){
+                    pending.push(new Frame(Pending.ASSIGNMENT, PREC_ASSIGNMENT, previous(), expr, height));
+                    continue operand;
+                }
 
-        while (match(TokenType.SLASH, TokenType.STAR)){
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+                // expr is the whole operand of the innermost pending frame
+                if (frame == null) return expr;
+                pending.pop();
+                height = frame.kind == Pending.BINARY
+                        ? Math.max(frame.height, height + 1)
+                        : Math.max(frame.height, height) + 1;
+
+                switch (frame.kind){
+                    case UNARY:
+                        expr = node(new Expr.Unary(frame.operator, expr));
+                        precedence = PREC_UNARY;
+                        break;
+                    case BINARY:
+                        precedence = frame.min - 1;
+                        expr = node(precedence <= PREC_AND
+                                ? new Expr.Logical(frame.left, frame.operator, expr)
+                                : new Expr.Binary(frame.left, frame.operator, expr));
+                        break;
+                    case ASSIGNMENT:
+                        expr = assignment(frame.left, frame.operator, expr);
+                        precedence = PREC_ASSIGNMENT;
+                        break;
+                    case GROUPING:
+                        consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
+                        expr = at(frame.operator.line, new Expr.Grouping(expr));
+                        precedence = PREC_CALL;
+                        break;
+                    case CALL:
+                        frame.arguments.add(expr);
+                        frame.height = height - 1;
+                        if (match(TokenType.COMMA)){
+                            if (frame.arguments.size() >= 255){
+                                error(peek(), "Can't have more than 255 arguments. ");  // No throw
+                            }
+                            pending.push(frame);
+                            continue operand;
+                        }
+                        consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
+                        expr = node(new Expr.Call(frame.left, previous(), frame.arguments.toArray(new Expr[0])));
+                        precedence = PREC_CALL;
+                        break;
+                }
+            }
         }
-
-        return expr;
     }
 
-    private Expr unary(){
-        if (match(TokenType.BANG, TokenType.MINUS)){
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
+    private Expr assignment(Expr target, Token equals, Expr value){
+        if (target instanceof Expr.Variable){
+            Token name = ((Expr.Variable)target).name;
+            return node(new Expr.Assign(name, value));
+        } else if (target instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)target;
+            return node(new Expr.Set(get.object, get.name, value));
         }
-
-        return call();
+        error(equals, "Invalid assignment target.");    // No throw
+        return target;
     }
 
-    private Expr call(){
-        Expr expr = primary();
-
-        while (true){
-            if (match(TokenType.LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else if (match(TokenType.DOT)) {
-                Token name = consume(TokenType.IDENTIFIER, "Expect property name after '.'.");
-                expr = new Expr.Get(expr, name);
-            } else {
-                break;
-            }
+    // Binding power of a binary operator, or 0 for any other token.
+    private static int precedence(TokenType type){
+        switch (type){
+            case OR: return PREC_OR;
+            case AND: return PREC_AND;
+            case BANG_EQUAL:
+            case EQUAL_EQUAL: return PREC_EQUALITY;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL: return PREC_COMPARISON;
+            case MINUS:
+            case PLUS: return PREC_TERM;
+            case SLASH:
+            case STAR: return PREC_FACTOR;
         }
-
-        return expr;
+        return 0;
     }
 
     private Expr primary(){
-        if (match(TokenType.FALSE)) return new Expr.Literal(false);
-        if (match(TokenType.TRUE)) return new Expr.Literal(true);
-        if (match(TokenType.NIL)) return new Expr.Literal(null);
+        if (match(TokenType.FALSE)) return at(previous().line, new Expr.Literal(false));
+        if (match(TokenType.TRUE)) return at(previous().line, new Expr.Literal(true));
+        if (match(TokenType.NIL)) return at(previous().line, new Expr.Literal(null));
 
         if (match(TokenType.NUMBER, TokenType.STRING)){
-            return new Expr.Literal(previous().literal);
+            return at(previous().line, new Expr.Literal(previous().literal));
         }
 
         if (match(TokenType.SUPER)){
             Token keyword = previous();
             consume(TokenType.DOT, "Expect '.' after 'super'.");
-            Token method = consume(TokenType.IDENTIFIER, "Expect superclass method name.");
-            return new Expr.Super(keyword, method);
+            consume(TokenType.IDENTIFIER, "Expect superclass method name.");
+            Token method = previous();
+            return node(new Expr.Super(keyword, method));
         }
 
         if (match(TokenType.THIS)){
-            return new Expr.This(previous());
-        }
-
-        if (match(TokenType.LEFT_PAREN)){
-            Expr expr = expression();
-            consume(TokenType.RIGHT_PAREN, "Expect ')' after expression.");
-            return new Expr.Grouping(expr);
+            return node(new Expr.This(previous()));
         }
 
         if (match(TokenType.IDENTIFIER)){
-            return new Expr.Variable(previous());
+            return node(new Expr.Variable(previous()));
         }
 
         throw error(peek(), "Expected expression.");
@@ -361,6 +477,29 @@ public class Parser {
 
 
     // Helpers
+
+    // Gives a new node its id.
+    private <T extends Expr> T node(T expr){
+        expr.id = ids.next();
+        return expr;
+    }
+
+    private <T extends Stmt> T node(T stmt){
+        stmt.id = ids.next();
+        return stmt;
+    }
+
+    // Gives a new node its id, and the line of a node whose first token isn't one of its fields.
+    private <T extends Expr> T at(int line, T expr){
+        expr.line = line;
+        return node(expr);
+    }
+
+    private <T extends Stmt> T at(int line, T stmt){
+        stmt.line = line;
+        return node(stmt);
+    }
+
     private boolean match(TokenType... types){
         for (TokenType type : types){
             if (check(type)){
@@ -371,47 +510,42 @@ public class Parser {
         return false;
     }
 
+    // Token types are read straight from the buffer; Token objects are only built by peek() and previous().
     private boolean check(TokenType type){
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance(){
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance(){
+        if (isAtEnd()) return;
+
+        current++;
+        if (current == tokens.count){
+            // Keep the previous token and scan the next window behind it.
+            tokens.discardBefore(current - 1);
+            current = 1;
+            scanner.scan(tokens, WINDOW);
+        }
     }
 
     private Token peek(){
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous(){
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
     }
 
     private boolean isAtEnd(){
-        return peek().type == TokenType.EOF;
+        return tokens.type(current) == TokenType.EOF;
     }
 
-    private Expr finishCall(Expr callee){
-        List<Expr> arguments = new ArrayList<>();
-        if (!check(TokenType.RIGHT_PAREN)){
-            do {
-                if (arguments.size() >= 255){
-                    error(peek(), "Can't have more than 255 arguments. ");  // No throw
-                }
-                arguments.add(expression());
-            } while (match(TokenType.COMMA));
-        }
-        Token paren = consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments.");
-
-        return new Expr.Call(callee, paren, arguments);
-    }
-
-
     // Error handling
-    private Token consume(TokenType type, String message){
-        if (check(type)) return advance();
+    private void consume(TokenType type, String message){
+        if (check(type)){
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
@@ -425,14 +559,15 @@ public class Parser {
         advance();
 
         while (!isAtEnd()){
-            if (previous().type == TokenType.SEMICOLON) return;
+            if (tokens.type(current - 1) == TokenType.SEMICOLON) return;
 
-            switch (peek().type){
+            switch (tokens.type(current)){
                 case CLASS:
                 case FUN:
                 case VAR:
                 case FOR:
                 case IF:
+                case IMPORT:
                 case WHILE:
                 case PRINT:
                 case RETURN:
@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+// Inline cache for one property access site (an Expr.Get or Expr.Set). It remembers the field index for the
+// last few instance shapes seen there, so a hit costs one reference comparison instead of a hash lookup.
+// Sites that see more shapes than it can hold go megamorphic and always take the slow path.
+class PropertyCache {
+    private static final int POLYMORPHIC_LIMIT = 4;
+
+    private final Shape[] shapes = new Shape[POLYMORPHIC_LIMIT];
+    private final int[] indexes = new int[POLYMORPHIC_LIMIT];     // -1: not a field, look for a method
+    private final Shape[] transitions = new Shape[POLYMORPHIC_LIMIT];   // shape after a set, for field additions
+    private int count = 0;
+    private boolean megamorphic = false;
+
+    Object get(LoxInstance instance, Token name){
+        int index = index(instance, name);
+        if (index >= 0) return instance.fields[index];
+        return instance.getMethod(name);
+    }
+
+    // Index of the field 'name' in the instance, or -1 when it isn't a field and may name a method.
+    int index(LoxInstance instance, Token name){
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++){
+            if (shapes[i] == shape) return indexes[i];
+        }
+
+        int index = shape.indexOf(name.symbol);
+        remember(shape, index, shape);
+        return index;
+    }
+
+    void set(LoxInstance instance, Token name, Object value){
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++){
+            if (shapes[i] == shape){
+                if (transitions[i] == shape){
+                    instance.fields[indexes[i]] = value;
+                } else {
+                    instance.addField(transitions[i], value);
+                }
+                return;
+            }
+        }
+
+        int index = shape.indexOf(name.symbol);
+        if (index >= 0){
+            remember(shape, index, shape);
+            instance.fields[index] = value;
+        } else {
+            Shape next = shape.withField(name.symbol);
+            remember(shape, shape.fieldCount(), next);
+            instance.addField(next, value);
+        }
+    }
+
+    private void remember(Shape shape, int index, Shape transition){
+        if (megamorphic) return;
+        if (count == POLYMORPHIC_LIMIT){
+            megamorphic = true;
+            return;
+        }
+        shapes[count] = shape;
+        indexes[count] = index;
+        transitions[count] = transition;
+        count++;
+    }
+}
@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -7,15 +8,12 @@ import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Scope> scopes = new Stack<>();
+    // Sets the depths and slots, which are only known once every scope they cross has ended.
+    private final List<Runnable> fixups = new ArrayList<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
-    Resolver(Interpreter interpreter){
-        this.interpreter = interpreter;
-    }
-
     private enum FunctionType{
         NONE,
         FUNCTION,
@@ -29,13 +27,55 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
+    private enum ScopeType{
+        BLOCK,
+        CLASS,
+        FUNCTION
+    }
+
+    // Only the variables a closure can capture need an environment that outlives their block. A block none of whose
+    // variables is read from a nested function gets no environment: its variables are moved into the environment
+    // current where it runs, that of the enclosing scope, and further out as long as that scope is hoisted too. They
+    // end up in the enclosing function's frame, the outermost block at top level, or the innermost captured block
+    // around them. A class's 'super' scope always gets its own.
+    private static class Scope {
+        final Map<Symbol, Local> locals = new HashMap<>();
+        final List<Local> stored = new ArrayList<>();   // Its own locals and those of the blocks hoisted into it
+        final Scope enclosing;
+        final ScopeType type;
+        int slots = 0;
+        boolean captured = false;   // A nested function refers to one of its variables
+        boolean hoisted = false;    // Its variables live in the enclosing scope's environment
+
+        Scope(Scope enclosing, ScopeType type){
+            this.enclosing = enclosing;
+            this.type = type;
+        }
+    }
+
+    // A local variable gets the next slot of its scope, in declaration order, and moves to a slot of the enclosing
+    // scope each time the scope holding it is hoisted.
+    private static class Local {
+        Scope home;     // The scope whose environment holds it
+        int slot;
+        boolean defined = false;
+
+        Local(Scope scope, int slot){
+            this.home = scope;
+            this.slot = slot;
+            scope.stored.add(this);
+        }
+    }
+
     // Nodes that create scopes and interact with variables
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt){
-        beginScope();
+        beginScope(ScopeType.BLOCK);
         resolve(stmt.statements);
-        endScope();
+        Scope scope = endScope();
+        stmt.scoped = !scope.hoisted;
+        stmt.slots = scope.slots;
         return null;
     }
 
@@ -44,10 +84,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        Local local = declare(stmt.name);
         define(stmt.name);
+        fixSlot(local, slot -> stmt.slot = slot);
 
-        if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)){
+        if (stmt.superclass != null && stmt.name.symbol == stmt.superclass.name.symbol){
             Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
         }
 
@@ -57,24 +98,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         }
 
         if (stmt.superclass != null){
-            beginScope();
-            scopes.peek().put("super", true);
+            beginScope(ScopeType.CLASS);
+            declareDefined(Symbol.SUPER);
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-
         for (Stmt.Function method : stmt.methods){
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme.equals("init")){
+            if (method.name.symbol == Symbol.INIT){
                 declaration = FunctionType.INITIALIZER;
             }
 
             resolveFunction(method, declaration);
         }
 
-        endScope();
-
         if (stmt.superclass != null) {
             endScope();
         }
@@ -85,8 +121,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt){
-        declare(stmt.name);
+        Local local = declare(stmt.name);
         define(stmt.name);
+        fixSlot(local, slot -> stmt.slot = slot);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
         return null;
@@ -94,45 +131,84 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        Local local = declare(stmt.name);
         if (stmt.initializer != null){
             resolve(stmt.initializer);
         }
         define(stmt.name);
+        fixSlot(local, slot -> stmt.slot = slot);
         return null;
     }
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE){
+        if (!scopes.isEmpty() && scopes.peek().locals.containsKey(expr.name.symbol)
+                && !scopes.peek().locals.get(expr.name.symbol).defined){
             Lox.error(expr.name, "Can't read local variable in its own initializer");
         }
 
-        resolveLocal(expr, expr.name);
+        resolveLocal(expr.name, (depth, slot) -> {
+            expr.depth = depth;
+            expr.slot = slot;
+        });
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        resolveLocal(expr.name, (depth, slot) -> {
+            expr.depth = depth;
+            expr.slot = slot;
+        });
         return null;
     }
 
     // Helpers
 
-    private void beginScope(){
-        scopes.push(new HashMap<String, Boolean>());
+    private interface Address {
+        void set(int depth, int slot);
     }
 
-    private void endScope() {
-        scopes.pop();
+    private interface Slot {
+        void set(int slot);
+    }
+
+    private void beginScope(ScopeType type){
+        scopes.push(new Scope(scopes.isEmpty() ? null : scopes.peek(), type));
+    }
+
+    // Every reference to the scope's variables has been seen by now, so whether a closure captures one is known.
+    private Scope endScope() {
+        Scope scope = scopes.pop();
+        if (scope.type == ScopeType.BLOCK && scope.enclosing != null && !scope.captured){
+            Scope enclosing = scope.enclosing;
+            for (Local local : scope.stored){
+                local.home = enclosing;
+                local.slot += enclosing.slots;
+            }
+            enclosing.stored.addAll(scope.stored);
+            enclosing.slots += scope.slots;
+            scope.hoisted = true;
+        }
+        return scope;
     }
 
     void resolve(List<Stmt> statements){
         for (Stmt statement : statements){
             resolve(statement);
         }
+
+        for (Runnable fixup : fixups){
+            fixup.run();
+        }
+        fixups.clear();
+    }
+
+    private void resolve(Stmt[] statements){
+        for (Stmt statement : statements){
+            resolve(statement);
+        }
     }
 
     private void resolve(Stmt stmt){
@@ -143,56 +219,115 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void resolveLocal(Expr expr, Token name){
+    // Hands 'address' the depth and slot of the local 'name' refers to, once they are known. A global is left at
+    // Expr.GLOBAL. A local read from inside a function nested in its scope is captured.
+    private void resolveLocal(Token name, Address address){
+        boolean nested = false;
         for (int i = scopes.size() - 1; i >= 0; i--){
-            if (scopes.get(i).containsKey(name.lexeme)){
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+            Scope scope = scopes.get(i);
+            Local local = scope.locals.get(name.symbol);
+            if (local != null){
+                if (nested) scope.captured = true;
+                Scope from = scopes.peek();
+                fixups.add(() -> address.set(depth(from, local), local.slot));
                 return;
             }
+            if (scope.type == ScopeType.FUNCTION) nested = true;
+        }
+    }
+
+    // The number of environments between the one current in 'from' and the one holding 'local'. Hoisted scopes
+    // have none of their own.
+    private static int depth(Scope from, Local local){
+        int depth = 0;
+        for (Scope scope = from; scope != local.home; scope = scope.enclosing){
+            if (!scope.hoisted) depth++;
         }
+        return depth;
+    }
+
+    private void fixSlot(Local local, Slot slot){
+        if (local != null) fixups.add(() -> slot.set(local.slot));
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type){
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
 
-        beginScope();
+        beginScope(ScopeType.FUNCTION);
+        // Methods get 'this' as the first slot of their own scope, so calling one needs no extra environment.
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER){
+            declareDefined(Symbol.THIS);
+        }
         for (Token param : function.params){
             declare(param);
             define(param);
         }
         resolve(function.body);
-        endScope();
+        function.frameSize = endScope().slots;
 
         currentFunction = enclosingFunction;
     }
 
-    private void declare(Token name){
-        if (scopes.isEmpty()) return;
+    // The new local, or null for a global.
+    private Local declare(Token name){
+        if (scopes.isEmpty()) return null;
 
-        Map<String, Boolean> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)){
+        Scope scope = scopes.peek();
+        if (scope.locals.containsKey(name.symbol)){
             Lox.error(name, "Already a variable with this name in this scope.");
         }
-        scope.put(name.lexeme, false);
+        Local local = new Local(scope, scope.slots++);
+        scope.locals.put(name.symbol, local);
+        return local;
     }
 
     private void define(Token name){
         if (scopes.isEmpty()) return;
 
-        Map<String, Boolean> scope = scopes.peek();
-        scope.put(name.lexeme, true);
+        scopes.peek().locals.get(name.symbol).defined = true;
+    }
+
+    private void declareDefined(Symbol name){
+        Scope scope = scopes.peek();
+        Local local = new Local(scope, scope.slots++);
+        local.defined = true;
+        scope.locals.put(name, local);
     }
 
     // Dummy nodes
 
     @Override
     public Void visitBinaryExpr(Expr.Binary expr) {
-        resolve(expr.left);
-        resolve(expr.right);
+        resolveChain(expr);
         return null;
     }
 
+    // A chain of operators down the left, resolved innermost first in a loop, in the same order as recursion would.
+    private void resolveChain(Expr expr){
+        List<Expr> spine = OperatorChain.spine(expr);
+        resolve(OperatorChain.left(spine.get(spine.size() - 1)));
+        for (int i = spine.size() - 1; i >= 0; i--){
+            Expr operator = spine.get(i);
+            resolve(OperatorChain.right(operator));
+            if (operator instanceof Expr.Binary) setNumeric((Expr.Binary) operator);
+        }
+    }
+
+    private static void setNumeric(Expr.Binary expr){
+        switch (expr.operator.type){
+            case MINUS:
+            case SLASH:
+            case STAR:
+                expr.numeric = true;
+                break;
+            case PLUS:
+                // Fails unless both operands are numbers or both are strings, so one numeric operand is enough.
+                expr.numeric = expr.left.numeric || expr.right.numeric;
+                break;
+        }
+    }
+
     @Override
     public Void visitCallExpr(Expr.Call expr) {
         resolve(expr.callee);
@@ -205,24 +340,26 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitGroupingExpr(Expr.Grouping expr) {
         resolve(expr.expression);
+        expr.numeric = expr.expression.numeric;
         return null;
     }
 
     @Override
     public Void visitLiteralExpr(Expr.Literal expr) {
+        expr.numeric = expr.value instanceof Double;
         return null;
     }
 
     @Override
     public Void visitLogicalExpr(Expr.Logical expr) {
-        resolve(expr.left);
-        resolve(expr.right);
+        resolveChain(expr);
         return null;
     }
 
     @Override
     public Void visitUnaryExpr(Expr.Unary expr) {
         resolve(expr.right);
+        expr.numeric = expr.operator.type == TokenType.MINUS;
         return null;
     }
 
@@ -245,7 +382,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Can't use 'this' outside of a class");;
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        resolveLocal(expr.keyword, (depth, slot) -> {
+            expr.depth = depth;
+            expr.slot = slot;
+        });
         return null;
     }
 
@@ -258,7 +398,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Can't use 'super in a class with no superclass.");
         }
 
-        resolveLocal(expr, expr.keyword);
+        resolveLocal(expr.keyword, (depth, slot) -> expr.depth = depth);
         return null;
     }
 
@@ -278,6 +418,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitImportStmt(Stmt.Import stmt) {
+        if (!scopes.isEmpty()){
+            Lox.error(stmt.keyword, "Can only import modules at top level.");
+        }
+        return null;
+    }
+
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         resolve(stmt.expression);
@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// String value made by '+' when the result is long. It only points at its two halves, so building a string piece
+// by piece costs time proportional to its final length rather than to its square. The characters are copied out
+// once, the first time the rope is printed, compared or hashed, and the flat string is kept from then on. Lox
+// strings are therefore either a java.lang.String or a Rope, and equal ropes and strings are the same value.
+final class Rope {
+    // Shorter results are copied straight into a String: it's as cheap as a node, and reads faster.
+    private static final int MIN_LENGTH = 64;
+
+    private final int length;
+    private Object left;    // String or Rope, null once flattened
+    private Object right;
+    private String flat;
+
+    private Rope(Object left, Object right, int length){
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    static boolean isString(Object value){
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // Both operands are Lox strings.
+    static Object concat(Object left, Object right){
+        int length = length(left) + length(right);
+        if (length < MIN_LENGTH) return left.toString() + right.toString();
+        return new Rope(left, right, length);
+    }
+
+    private static int length(Object string){
+        return string instanceof Rope ? ((Rope) string).length : ((String) string).length();
+    }
+
+    // Fills the characters from the end, right half first, so the stack stays shallow for the usual rope built by
+    // appending to the left operand.
+    @Override
+    public String toString(){
+        if (flat != null) return flat;
+
+        char[] chars = new char[length];
+        int end = length;
+        Deque<Object> parts = new ArrayDeque<>();
+        parts.push(this);
+        while (!parts.isEmpty()){
+            Object part = parts.pop();
+            if (part instanceof Rope && ((Rope) part).flat == null){
+                parts.push(((Rope) part).left);
+                parts.push(((Rope) part).right);
+            } else {
+                String string = part.toString();
+                end -= string.length();
+                string.getChars(0, string.length(), chars, end);
+            }
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        return isString(other) && toString().equals(other.toString());
+    }
+
+    // The same as the equal String's.
+    @Override
+    public int hashCode(){
+        return toString().hashCode();
+    }
+}
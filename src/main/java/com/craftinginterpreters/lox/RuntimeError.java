@@ -3,9 +3,18 @@ package com.craftinginterpreters.lox;
 public class RuntimeError extends RuntimeException{
 
     final Token token;
+    final int line;
 
     RuntimeError(Token token, String message){
         super(message);
         this.token = token;
+        this.line = token.line;
+    }
+
+    // For engines that only keep line information around at runtime.
+    RuntimeError(int line, String message){
+        super(message);
+        this.token = null;
+        this.line = line;
     }
 }
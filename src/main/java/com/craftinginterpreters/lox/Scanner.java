@@ -1,128 +1,119 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
+// Scans the source into a TokenBuffer. Tokens can be produced on demand, a window at a time through scan(), so a
+// large source never needs all of its tokens in memory at once. The source is any CharSequence, e.g. a
+// MappedSource read in place from a memory-mapped file. Scanning allocates nothing per token: keywords are recognized
+// straight from the characters and lexemes are only materialized by the TokenBuffer.
 public class Scanner {
-    private static final Map<String, TokenType> keywords;
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final CharSequence source;
+    private final int end;
     private int start = 0;
     private int current = 0;
     private int line = 1;
 
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",   TokenType.AND);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("else",  TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("for",   TokenType.FOR);
-        keywords.put("fun",   TokenType.FUN);
-        keywords.put("if",    TokenType.IF);
-        keywords.put("nil",   TokenType.NIL);
-        keywords.put("or",    TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return",TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this",  TokenType.THIS);
-        keywords.put("true",  TokenType.TRUE);
-        keywords.put("var",   TokenType.VAR);
-        keywords.put("while", TokenType.WHILE   );
-    }
-
-    Scanner(String source){
+    Scanner(CharSequence source){
+        this(source, 0, source.length(), 1);
+    }
+
+    // Scans only source[start, end), whose first character is on the given line. Token offsets stay relative to
+    // the whole source.
+    Scanner(CharSequence source, int start, int end, int line){
         this.source = source;
+        this.end = end;
+        this.start = start;
+        this.current = start;
+        this.line = line;
     }
 
-    List<Token> scanTokens(){
-       while (!isAtEnd()){
-           // We are at the beginning of the next lexeme
-           start = current;
-           scanToken();
-       }
-       tokens.add(new Token(TokenType.EOF, "", null, line));
-       return tokens;
+    TokenBuffer newBuffer(){
+        return new TokenBuffer(source);
     }
 
-    private void scanToken(){
-        char c = advance();
-        switch (c){
-            case '(': addToken(TokenType.LEFT_PAREN); break;
-            case ')': addToken(TokenType.RIGHT_PAREN); break;
-            case '{': addToken(TokenType.LEFT_BRACE); break;
-            case '}': addToken(TokenType.RIGHT_BRACE); break;
-            case ',': addToken(TokenType.COMMA); break;
-            case '.': addToken(TokenType.DOT); break;
-            case '-': addToken(TokenType.MINUS); break;
-            case '+': addToken(TokenType.PLUS); break;
-            case ';': addToken(TokenType.SEMICOLON); break;
-            case '*': addToken(TokenType.STAR); break;
-
-            case '!':{
-                addToken(match('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
-                break;
-            }
-            case '=':{
-                addToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
-                break;
-            }
-            case '<':{
-                addToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
-                break;
+    // Scans the whole source up front.
+    TokenBuffer scanTokens(){
+        TokenBuffer tokens = newBuffer();
+        while (scan(tokens, Integer.MAX_VALUE));
+        return tokens;
+    }
+
+    // Appends up to 'max' tokens to the buffer. Returns false once the EOF token has been added.
+    boolean scan(TokenBuffer tokens, int max){
+        int added = 0;
+        while (added < max){
+            if (isAtEnd()){
+                tokens.add(TokenType.EOF, current, 0, line);
+                return false;
             }
-            case '>':{
-                addToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
-                break;
+
+            // We are at the beginning of the next lexeme
+            start = current;
+            TokenType type = scanToken();
+            if (type != null){
+                tokens.add(type, start, current - start, line);
+                added++;
             }
+        }
+        return true;
+    }
+
+    // Returns null for whitespace, comments and errors, which produce no token.
+    private TokenType scanToken(){
+        char c = advance();
+        switch (c){
+            case '(': return TokenType.LEFT_PAREN;
+            case ')': return TokenType.RIGHT_PAREN;
+            case '{': return TokenType.LEFT_BRACE;
+            case '}': return TokenType.RIGHT_BRACE;
+            case ',': return TokenType.COMMA;
+            case '.': return TokenType.DOT;
+            case '-': return TokenType.MINUS;
+            case '+': return TokenType.PLUS;
+            case ';': return TokenType.SEMICOLON;
+            case '*': return TokenType.STAR;
+
+            case '!':
+                return match('=') ? TokenType.BANG_EQUAL : TokenType.BANG;
+            case '=':
+                return match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL;
+            case '<':
+                return match('=') ? TokenType.LESS_EQUAL : TokenType.LESS;
+            case '>':
+                return match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER;
 
             case '/':{
                 if (match('/')){
                     // This is a comment until the end of the line
                     while (peek() != '\n' && !isAtEnd()) advance();
+                    return null;
                 }
-                else{
-                    addToken(TokenType.SLASH);
-                }
-                break;
+                return TokenType.SLASH;
             }
 
             // Ignore whitespaces
             case ' ':
             case '\r':
             case '\t':
-                break;
+                return null;
 
             case '\n':
                 line++;
-                break;
+                return null;
 
-            case '"': string(); break;
+            case '"': return string();
 
             default:
                 if (isDigit(c)){
-                    number();
+                    return number();
                 } else if (isAlpha(c)) {
-                    identifier();
+                    return identifier();
                 } else {
                     Lox.error(line, "Unexpected character.");
+                    return null;
                 }
-                break;
         }
     }
 
-    private void addToken(TokenType type){
-        addToken(type, null);
-    }
-
-    private void addToken(TokenType type, Object literal){
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
-    }
-
-    private void string(){
+    private TokenType string(){
         while (peek() != '"' && !isAtEnd()){
             if (peek() == '\n') line++;
             advance();
@@ -130,15 +121,14 @@ public class Scanner {
 
         if (isAtEnd()){
             Lox.error(line, "Unterminated string.");
-            return;
+            return null;
         }
 
         advance(); // Consume the closing "
-        String value = source.substring(start + 1, current - 1); // Trim the surrounding quotes.
-        addToken(TokenType.STRING, value);
+        return TokenType.STRING;
     }
 
-    private void number(){
+    private TokenType number(){
         // Integer part
         while (isDigit(peek())) advance();
 
@@ -148,16 +138,62 @@ public class Scanner {
             while (isDigit(peek())) advance();
         }
 
-        addToken(TokenType.NUMBER, Double.parseDouble(source.substring(start, current)));
+        return TokenType.NUMBER;
     }
 
-    private void identifier(){
+    private TokenType identifier(){
         while (isAlphaNumeric(peek())) advance();
+        return identifierType();
+    }
+
+    // Recognizes keywords by their letters, so no String is built for the lexeme.
+    private TokenType identifierType(){
+        switch (source.charAt(start)){
+            case 'a': return checkKeyword(1, "nd", TokenType.AND);
+            case 'c': return checkKeyword(1, "lass", TokenType.CLASS);
+            case 'e': return checkKeyword(1, "lse", TokenType.ELSE);
+            case 'f':
+                if (current - start > 1){
+                    switch (source.charAt(start + 1)){
+                        case 'a': return checkKeyword(2, "lse", TokenType.FALSE);
+                        case 'o': return checkKeyword(2, "r", TokenType.FOR);
+                        case 'u': return checkKeyword(2, "n", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i':
+                if (current - start > 1){
+                    switch (source.charAt(start + 1)){
+                        case 'f': return checkKeyword(2, "", TokenType.IF);
+                        case 'm': return checkKeyword(2, "port", TokenType.IMPORT);
+                    }
+                }
+                break;
+            case 'n': return checkKeyword(1, "il", TokenType.NIL);
+            case 'o': return checkKeyword(1, "r", TokenType.OR);
+            case 'p': return checkKeyword(1, "rint", TokenType.PRINT);
+            case 'r': return checkKeyword(1, "eturn", TokenType.RETURN);
+            case 's': return checkKeyword(1, "uper", TokenType.SUPER);
+            case 't':
+                if (current - start > 1){
+                    switch (source.charAt(start + 1)){
+                        case 'h': return checkKeyword(2, "is", TokenType.THIS);
+                        case 'r': return checkKeyword(2, "ue", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword(1, "ar", TokenType.VAR);
+            case 'w': return checkKeyword(1, "hile", TokenType.WHILE);
+        }
+        return TokenType.IDENTIFIER;
+    }
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if (type == null) type = TokenType.IDENTIFIER;
-        addToken(type);
+    private TokenType checkKeyword(int offset, String rest, TokenType type){
+        if (current - start != offset + rest.length()) return TokenType.IDENTIFIER;
+        for (int i = 0; i < rest.length(); i++){
+            if (source.charAt(start + offset + i) != rest.charAt(i)) return TokenType.IDENTIFIER;
+        }
+        return type;
     }
 
     private boolean match(char expected){
@@ -178,15 +214,30 @@ public class Scanner {
     }
 
     private char peekNext(){
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     }
 
     private boolean isAtEnd(){
-        return current >= source.length();
+        return current >= end;
+    }
+
+    // True if the whole text is written like a number literal.
+    static boolean isNumber(CharSequence text){
+        int length = text.length();
+        int i = 0;
+        while (i < length && isDigit(text.charAt(i))) i++;
+        if (i == 0) return false;
+
+        if (i < length && text.charAt(i) == '.'){
+            int fraction = ++i;
+            while (i < length && isDigit(text.charAt(i))) i++;
+            if (i == fraction) return false;
+        }
+        return i == length;
     }
 
-    private boolean isDigit(char c){
+    private static boolean isDigit(char c){
         return c >= '0' && c <= '9';
     }
 
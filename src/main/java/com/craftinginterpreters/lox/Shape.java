@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+// Field layout shared by every instance that got the same fields added in the same order (a "hidden class").
+// Instances keep only their values, in an array indexed by the shape.
+//
+// Transitions are held weakly: a shape lives only while some instance, property cache or descendant shape refers
+// to it, so objects built with ever-changing field names don't grow the tree from EMPTY forever. Each shape holds
+// its parent strongly, which keeps the path to any live shape intact and shared.
+class Shape {
+    static final Shape EMPTY = new Shape(null, new HashMap<>());
+
+    private final Shape parent;
+    private final Map<Symbol, Integer> indexes;
+    private final Map<Symbol, WeakReference<Shape>> transitions = new HashMap<>();
+
+    private Shape(Shape parent, Map<Symbol, Integer> indexes){
+        this.parent = parent;
+        this.indexes = indexes;
+    }
+
+    int fieldCount(){
+        return indexes.size();
+    }
+
+    // Returns -1 when instances of this shape have no such field.
+    int indexOf(Symbol name){
+        Integer index = indexes.get(name);
+        if (index == null) return -1;
+        return index;
+    }
+
+    // The shape an instance moves to when 'name' is added to it. Transitions are shared, so every
+    // instance that grows the same way ends up with the same shape.
+    Shape withField(Symbol name){
+        WeakReference<Shape> reference = transitions.get(name);
+        Shape next = reference == null ? null : reference.get();
+        if (next == null){
+            // Only a miss can follow a collection, so that is when the cleared entries are dropped.
+            transitions.values().removeIf(dead -> dead.get() == null);
+            Map<Symbol, Integer> nextIndexes = new HashMap<>(indexes);
+            nextIndexes.put(name, indexes.size());
+            next = new Shape(this, nextIndexes);
+            transitions.put(name, new WeakReference<>(next));
+        }
+        return next;
+    }
+}
@@ -1,15 +1,17 @@
 package com.craftinginterpreters.lox;
 
-import java.util.List;
-
 abstract class Stmt {
 
+    int id = -1;    // From NodeIds, or -1 for a node made outside the front end
+    int line;       // Where the node starts in the source
+
     interface Visitor<R> {
         R visitBlockStmt(Block stmt);
         R visitClassStmt(Class stmt);
         R visitExpressionStmt(Expression stmt);
         R visitFunctionStmt(Function stmt);
         R visitIfStmt(If stmt);
+        R visitImportStmt(Import stmt);
         R visitPrintStmt(Print stmt);
         R visitReturnStmt(Return stmt);
         R visitVarStmt(Var stmt);
@@ -20,9 +22,11 @@ abstract class Stmt {
 
     static class Block extends Stmt {
 
-        final List<Stmt> statements;
+        final Stmt[] statements;
+        boolean scoped = true;
+        int slots;
 
-        Block(List<Stmt> statements) {
+        Block(Stmt[] statements) {
             this.statements = statements; 
         }
 
@@ -36,12 +40,14 @@ abstract class Stmt {
 
         final Token name;
         final Expr.Variable superclass;
-        final List<Stmt.Function> methods;
+        final Stmt.Function[] methods;
+        int slot = Expr.GLOBAL;
 
-        Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+        Class(Token name, Expr.Variable superclass, Stmt.Function[] methods) {
             this.name = name; 
             this.superclass = superclass; 
             this.methods = methods; 
+            this.line = name.line;
         }
 
         @Override
@@ -56,6 +62,7 @@ abstract class Stmt {
 
         Expression(Expr expression) {
             this.expression = expression; 
+            this.line = expression.line;
         }
 
         @Override
@@ -67,13 +74,16 @@ abstract class Stmt {
     static class Function extends Stmt {
 
         final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        final Token[] params;
+        final Stmt[] body;
+        int slot = Expr.GLOBAL;
+        int frameSize;
 
-        Function(Token name, List<Token> params, List<Stmt> body) {
+        Function(Token name, Token[] params, Stmt[] body) {
             this.name = name; 
             this.params = params; 
             this.body = body; 
+            this.line = name.line;
         }
 
         @Override
@@ -92,6 +102,7 @@ abstract class Stmt {
             this.condition = condition; 
             this.thenBranch = thenBranch; 
             this.elseBranch = elseBranch; 
+            this.line = condition.line;
         }
 
         @Override
@@ -100,12 +111,30 @@ abstract class Stmt {
         }
     }
 
+    static class Import extends Stmt {
+
+        final Token keyword;
+        final Token path;
+
+        Import(Token keyword, Token path) {
+            this.keyword = keyword; 
+            this.path = path; 
+            this.line = keyword.line;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitImportStmt(this);
+        }
+    }
+
     static class Print extends Stmt {
 
         final Expr expression;
 
         Print(Expr expression) {
             this.expression = expression; 
+            this.line = expression.line;
         }
 
         @Override
@@ -122,6 +151,7 @@ abstract class Stmt {
         Return(Token keyword, Expr value) {
             this.keyword = keyword; 
             this.value = value; 
+            this.line = keyword.line;
         }
 
         @Override
@@ -134,10 +164,12 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        int slot = Expr.GLOBAL;
 
         Var(Token name, Expr initializer) {
             this.name = name; 
             this.initializer = initializer; 
+            this.line = name.line;
         }
 
         @Override
@@ -154,6 +186,7 @@ abstract class Stmt {
         While(Expr condition, Stmt body) {
             this.condition = condition; 
             this.body = body; 
+            this.line = condition.line;
         }
 
         @Override
@@ -0,0 +1,6 @@
+package com.craftinginterpreters.lox;
+
+// A statement compiled by the ClosureCompiler. Returns its Completion.
+interface StmtNode {
+    Object execute(Environment environment);
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Canonical identity of an identifier. Every occurrence of a name maps to the same Symbol, so lookups keyed by
+// symbols compare references instead of strings. The hash is computed once, and the dense id lets tables such
+// as the globals be plain arrays. The table is shared by the whole process and safe to use from many threads.
+final class Symbol {
+    private static final ConcurrentHashMap<String, Symbol> table = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    static final Symbol THIS = of("this");
+    static final Symbol SUPER = of("super");
+    static final Symbol INIT = of("init");
+
+    final String name;
+    final int id;
+    private final int hash;
+
+    private Symbol(String name, int id){
+        this.name = name;
+        this.id = id;
+        this.hash = name.hashCode();
+    }
+
+    static Symbol of(String name){
+        Symbol symbol = table.get(name);
+        if (symbol != null) return symbol;
+        return table.computeIfAbsent(name, key -> new Symbol(key, nextId.getAndIncrement()));
+    }
+
+    // Equality is identity, inherited from Object.
+    @Override
+    public int hashCode(){
+        return hash;
+    }
+
+    @Override
+    public String toString(){
+        return name;
+    }
+}
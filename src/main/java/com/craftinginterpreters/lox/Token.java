@@ -4,13 +4,23 @@ public class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line;
+    int line;               // Moved by LineShifter when the text above it in a Document changes
+    final Symbol symbol;    // Set for names: identifiers, 'this' and 'super'
 
     Token(TokenType type, String lexeme, Object literal, int line){
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = null;
+    }
+
+    Token(TokenType type, Symbol symbol, int line){
+        this.type = type;
+        this.lexeme = symbol.name;
+        this.literal = null;
+        this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString(){
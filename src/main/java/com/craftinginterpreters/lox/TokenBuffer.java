@@ -0,0 +1,139 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Scanned tokens stored as parallel primitive arrays (type, start, length, line) instead of one Token object
+// each. Token objects, with their lexeme and literal, are only built when the parser keeps one in the AST or
+// reports an error at it. Identifiers are resolved to their Symbol, so every occurrence of a name shares one.
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final CharSequence source;
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    int count = 0;
+
+    // Open-addressing cache of the symbols seen in this source, probed with the characters in the source so hits
+    // allocate nothing and skip the global symbol table.
+    private Symbol[] names = new Symbol[64];
+    private int nameCount = 0;
+
+    TokenBuffer(CharSequence source){
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line){
+        if (count == types.length){
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    TokenType type(int index){
+        return TYPES[types[index]];
+    }
+
+    int line(int index){
+        return lines[index];
+    }
+
+    int start(int index){
+        return starts[index];
+    }
+
+    int length(int index){
+        return lengths[index];
+    }
+
+    // Drops the tokens from 'index' on.
+    void truncate(int index){
+        count = index;
+    }
+
+    Token token(int index){
+        TokenType type = type(index);
+        int start = starts[index];
+        int end = start + lengths[index];
+
+        switch (type){
+            case IDENTIFIER:
+                return new Token(type, symbol(start, end), lines[index]);
+            case THIS:
+                return new Token(type, Symbol.THIS, lines[index]);
+            case SUPER:
+                return new Token(type, Symbol.SUPER, lines[index]);
+            case STRING:
+                String text = text(start, end);
+                return new Token(type, text, text.substring(1, text.length() - 1), lines[index]);
+            case NUMBER:
+                String number = text(start, end);
+                return new Token(type, number, Double.parseDouble(number), lines[index]);
+            default:
+                return new Token(type, text(start, end), null, lines[index]);
+        }
+    }
+
+    // Drops the tokens before 'index', moving the rest to the front, so a streaming parser keeps a bounded window.
+    void discardBefore(int index){
+        int remaining = count - index;
+        System.arraycopy(types, index, types, 0, remaining);
+        System.arraycopy(starts, index, starts, 0, remaining);
+        System.arraycopy(lengths, index, lengths, 0, remaining);
+        System.arraycopy(lines, index, lines, 0, remaining);
+        count = remaining;
+    }
+
+    private String text(int start, int end){
+        return source.subSequence(start, end).toString();
+    }
+
+    private Symbol symbol(int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++){
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = names.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask){
+            Symbol symbol = names[slot];
+            if (symbol == null){
+                symbol = Symbol.of(text(start, end));
+                names[slot] = symbol;
+                if (++nameCount * 2 > names.length) growNames();
+                return symbol;
+            }
+            if (symbol.hashCode() == hash && matches(symbol.name, start, end)) return symbol;
+        }
+    }
+
+    private boolean matches(String name, int start, int end){
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++){
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private void growNames(){
+        Symbol[] old = names;
+        names = new Symbol[old.length * 2];
+        int mask = names.length - 1;
+        for (Symbol symbol : old){
+            if (symbol == null) continue;
+            int slot = symbol.hashCode() & mask;
+            while (names[slot] != null) slot = (slot + 1) & mask;
+            names[slot] = symbol;
+        }
+    }
+}
@@ -0,0 +1,510 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Stack-based virtual machine that runs the bytecode produced by the Compiler.
+// Lox calls push a CallFrame instead of recursing on the Java stack. Locals live in the frame's stack slots; the
+// ones a closure captures move into their VmUpvalue when their scope ends.
+public class VM implements Engine {
+
+    private static class CallFrame {
+        final VmClosure closure;            // null for top-level scripts
+        final VmFunction function;
+        final int base;                     // first stack slot owned by this frame
+        final int slots;                    // stack slot of local 0: the receiver of a method call
+        int ip = 0;
+
+        CallFrame(VmClosure closure, VmFunction function, int base, int slots){
+            this.closure = closure;
+            this.function = function;
+            this.base = base;
+            this.slots = slots;
+        }
+    }
+
+    final Environment globals = new Environment();
+
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private VmUpvalue openUpvalues = null;  // Sorted by slot, the highest first
+    // Calls nest at most this deep, like in clox. The value stack only grows with the frames, so this bounds it too.
+    private static final int FRAMES_MAX = 64 * 256;
+
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    VM(){
+        Natives.define(globals);
+    }
+
+    @Override
+    public void interpret(List<Stmt> statements){
+        List<VmFunction> scripts = new Compiler().compile(statements);
+        if (scripts == null) return;
+
+        try {
+            for (VmFunction script : scripts){
+                pushFrame(null, script, null, stackTop, stackTop, 0);
+                run(frameCount - 1);
+            }
+        }
+        catch (RuntimeError error){
+            // Closures that escaped, into a global say, keep working.
+            closeUpvalues(0);
+            stackTop = 0;
+            frameCount = 0;
+            Lox.runTimeError(error);
+        }
+    }
+
+    // Entry point for closures called from Java code, e.g. an initializer run by LoxClass.call().
+    Object call(VmClosure closure, LoxInstance receiver, List<Object> arguments){
+        int exitDepth = frameCount;
+        int base = stackTop;
+        push(closure);
+        for (Object argument : arguments){
+            push(argument);
+        }
+        callValue(closure, receiver, arguments.size(), base, 0);
+        return run(exitDepth);
+    }
+
+    // Runs until the frame at 'exitDepth' returns, and hands back its result.
+    private Object run(int exitDepth){
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.function.chunk;
+        byte[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        int ip = frame.ip;
+        int slots = frame.slots;
+
+        for (;;){
+            switch (code[ip++]){
+                case OpCode.CONSTANT: {
+                    push(constants[readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                }
+                case OpCode.NIL: push(null); break;
+                case OpCode.TRUE: push(true); break;
+                case OpCode.FALSE: push(false); break;
+                case OpCode.POP: stackTop--; break;
+                case OpCode.GET_LOCAL: {
+                    push(stack[slots + readShort(code, ip)]);
+                    ip += 2;
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    stack[slots + readShort(code, ip)] = peek(0);
+                    ip += 2;
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    VmUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                    ip += 2;
+                    push(upvalue.slot == VmUpvalue.CLOSED ? upvalue.value : stack[upvalue.slot]);
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    VmUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                    ip += 2;
+                    if (upvalue.slot == VmUpvalue.CLOSED){
+                        upvalue.value = peek(0);
+                    } else {
+                        stack[upvalue.slot] = peek(0);
+                    }
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    Token name = (Token) constants[readShort(code, ip)];
+                    ip += 2;
+                    push(globals.get(name));
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    Token name = (Token) constants[readShort(code, ip)];
+                    ip += 2;
+                    globals.assign(name, peek(0));
+                    break;
+                }
+                case OpCode.DEFINE: {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    ip += 2;
+                    globals.define(name, pop());
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    Token name = (Token) constants[readShort(code, ip)];
+                    PropertyCache cache = (PropertyCache) constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    Object object = pop();
+                    if (!(object instanceof LoxInstance)){
+                        throw new RuntimeError(name, "Only instances have properties.");
+                    }
+                    push(cache.get((LoxInstance) object, name));
+                    break;
+                }
+                case OpCode.GET_METHOD: {
+                    Token name = (Token) constants[readShort(code, ip)];
+                    PropertyCache cache = (PropertyCache) constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    Object object = pop();
+                    if (!(object instanceof LoxInstance)){
+                        throw new RuntimeError(name, "Only instances have properties.");
+                    }
+                    LoxInstance instance = (LoxInstance) object;
+                    int index = cache.index(instance, name);
+                    if (index >= 0){
+                        push(null);
+                        push(instance.fields[index]);
+                    } else {
+                        push(instance);
+                        push(instance.findMethod(name));
+                    }
+                    break;
+                }
+                case OpCode.CHECK_INSTANCE: {
+                    if (!(peek(0) instanceof LoxInstance)){
+                        throw new RuntimeError(chunk.lines[ip - 1], "Only instances have fields");
+                    }
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    Token name = (Token) constants[readShort(code, ip)];
+                    PropertyCache cache = (PropertyCache) constants[readShort(code, ip + 2)];
+                    ip += 4;
+                    Object value = pop();
+                    LoxInstance object = (LoxInstance) pop();
+                    cache.set(object, name, value);
+                    push(value);
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    Token method = (Token) constants[readShort(code, ip)];
+                    ip += 2;
+                    LoxClass superclass = (LoxClass) pop();
+                    LoxInstance object = (LoxInstance) pop();
+                    LoxMethod bound = superclass.findMethod(method.symbol);
+                    if (bound == null){
+                        throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+                    }
+                    push(bound.bind(object));
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object b = pop();
+                    push(Interpreter.isEqual(pop(), b));
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object b = pop();
+                    push(!Interpreter.isEqual(pop(), b));
+                    break;
+                }
+                case OpCode.GREATER: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() > b);
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() >= b);
+                    break;
+                }
+                case OpCode.LESS: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() < b);
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() <= b);
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object b = pop();
+                    Object a = pop();
+                    if (a instanceof Double && b instanceof Double){
+                        push((double) a + (double) b);
+                    } else if (Rope.isString(a) && Rope.isString(b)) {
+                        push(Rope.concat(a, b));
+                    } else {
+                        throw new RuntimeError(chunk.lines[ip - 1], "Operands must be two numbers or two strings");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() - b);
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() * b);
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    checkNumberOperands(chunk, ip);
+                    double b = (double) pop();
+                    push((double) pop() / b);
+                    break;
+                }
+                case OpCode.NOT: push(!Interpreter.isTruthy(pop())); break;
+                case OpCode.NEGATE: {
+                    if (!(peek(0) instanceof Double)){
+                        throw new RuntimeError(chunk.lines[ip - 1], "Operand must be a number.");
+                    }
+                    push(-(double) pop());
+                    break;
+                }
+                case OpCode.PRINT: {
+                    System.out.println(Interpreter.stringify(pop()));
+                    break;
+                }
+                case OpCode.JUMP: {
+                    ip += 2 + readShort(code, ip);
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = readShort(code, ip);
+                    ip += 2;
+                    if (!Interpreter.isTruthy(peek(0))) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    ip += 2 - readShort(code, ip);
+                    break;
+                }
+                case OpCode.CALL: {
+                    int argCount = readShort(code, ip);
+                    ip += 2;
+                    frame.ip = ip;
+                    if (callValue(peek(argCount), null, argCount, stackTop - argCount - 1, chunk.lines[ip - 1])){
+                        frame = frames[frameCount - 1];
+                        chunk = frame.function.chunk;
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                    }
+                    break;
+                }
+                case OpCode.INVOKE: {
+                    int argCount = readShort(code, ip);
+                    ip += 2;
+                    frame.ip = ip;
+                    int base = stackTop - argCount - 2;
+                    if (callValue(peek(argCount), (LoxInstance) stack[base], argCount, base, chunk.lines[ip - 1])){
+                        frame = frames[frameCount - 1];
+                        chunk = frame.function.chunk;
+                        code = chunk.code;
+                        constants = chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                    }
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    VmFunction function = (VmFunction) constants[readShort(code, ip)];
+                    ip += 2;
+                    VmUpvalue[] upvalues = new VmUpvalue[function.upvalueCount];
+                    for (int i = 0; i < upvalues.length; i++){
+                        boolean local = readShort(code, ip) != 0;
+                        int index = readShort(code, ip + 2);
+                        ip += 4;
+                        upvalues[i] = local ? captureUpvalue(slots + index) : frame.closure.upvalues[index];
+                    }
+                    push(new VmClosure(function, upvalues, this));
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE: {
+                    closeUpvalues(stackTop - 1);
+                    stackTop--;
+                    break;
+                }
+                case OpCode.RETURN: {
+                    Object result = pop();
+                    CallFrame returning = frames[--frameCount];
+                    frames[frameCount] = null;
+                    if (returning.function.isInitializer){
+                        result = stack[returning.slots];
+                    }
+                    closeUpvalues(returning.slots);
+                    stackTop = returning.base;
+
+                    if (frameCount == exitDepth) return result;
+
+                    push(result);
+                    frame = frames[frameCount - 1];
+                    chunk = frame.function.chunk;
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    ip = frame.ip;
+                    slots = frame.slots;
+                    break;
+                }
+                case OpCode.INHERIT: {
+                    if (!(peek(0) instanceof LoxClass)){
+                        throw new RuntimeError(chunk.lines[ip - 1], "Superclass must be a class.");
+                    }
+                    break;
+                }
+                case OpCode.CLASS: {
+                    String name = (String) constants[readShort(code, ip)];
+                    int methodCount = readShort(code, ip + 2);
+                    ip += 4;
+
+                    Map<Symbol, LoxMethod> methods = new HashMap<>();
+                    int first = stackTop - methodCount;
+                    for (int i = first; i < stackTop; i++){
+                        VmClosure method = (VmClosure) stack[i];
+                        methods.put(method.function.name, method);
+                    }
+                    stackTop = first;
+                    LoxClass superclass = (LoxClass) pop();
+                    push(new LoxClass(name, superclass, methods));
+                    break;
+                }
+            }
+        }
+    }
+
+    // Calls the callee sitting under 'argCount' arguments; everything from 'base' up is consumed by the call.
+    // The receiver is non-null only for method invocations. Returns true when a new frame was pushed and the
+    // dispatch loop must switch to it.
+    private boolean callValue(Object callee, LoxInstance receiver, int argCount, int base, int line){
+        if (callee instanceof VmClosure){
+            VmClosure closure = (VmClosure) callee;
+            checkArity(closure.arity(), argCount, line);
+            if (receiver == null) receiver = closure.receiver;
+            pushFrame(closure, closure.function, receiver, base, stackTop - argCount, line);
+            return true;
+        }
+
+        if (callee instanceof LoxClass){
+            LoxClass klass = (LoxClass) callee;
+            checkArity(klass.arity(), argCount, line);
+            LoxInstance instance = new LoxInstance(klass);
+            LoxMethod initializer = klass.findMethod(Symbol.INIT);
+            if (initializer instanceof VmClosure){
+                VmClosure method = (VmClosure) initializer;
+                pushFrame(method, method.function, instance, base, stackTop - argCount, line);
+                return true;
+            }
+            stackTop = base;
+            push(instance);
+            return false;
+        }
+
+        if (callee instanceof LoxCallable){
+            LoxCallable function = (LoxCallable) callee;
+            checkArity(function.arity(), argCount, line);
+            int first = stackTop - argCount;
+            Object result;
+            try {
+                switch (argCount){
+                    case 0: result = function.call0(this); break;
+                    case 1: result = function.call1(this, stack[first]); break;
+                    case 2: result = function.call2(this, stack[first], stack[first + 1]); break;
+                    case 3: result = function.call3(this, stack[first], stack[first + 1], stack[first + 2]); break;
+                    default: result = function.callN(this, Arrays.copyOfRange(stack, first, stackTop));
+                }
+            } catch (NativeError error){
+                throw new RuntimeError(line, error.getMessage());
+            }
+            stackTop = base;
+            push(result);
+            return false;
+        }
+
+        throw new RuntimeError(line, "Can only call functions and classes.");
+    }
+
+    // The arguments stay where they are and become the callee's first locals. A closure's local 0, just under them,
+    // holds the receiver, which takes the callee's slot. Everything from 'base' up is dropped when the call returns.
+    private void pushFrame(VmClosure closure, VmFunction function, LoxInstance receiver, int base, int firstArgument,
+                           int line){
+        if (frameCount == FRAMES_MAX){
+            throw new RuntimeError(line, "Stack overflow.");
+        }
+        if (frameCount == frames.length){
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+
+        int slots = firstArgument;
+        if (closure != null){
+            slots--;
+            stack[slots] = receiver;
+        }
+        frames[frameCount++] = new CallFrame(closure, function, base, slots);
+    }
+
+    // The open upvalue for the stack slot, shared by every closure that captures the variable in it.
+    private VmUpvalue captureUpvalue(int slot){
+        VmUpvalue previous = null;
+        VmUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot){
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        VmUpvalue created = new VmUpvalue(slot, upvalue);
+        if (previous == null){
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    // Moves the values of the variables from 'last' up the stack into their upvalues.
+    private void closeUpvalues(int last){
+        while (openUpvalues != null && openUpvalues.slot >= last){
+            VmUpvalue upvalue = openUpvalues;
+            upvalue.value = stack[upvalue.slot];
+            upvalue.slot = VmUpvalue.CLOSED;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private void checkArity(int arity, int argCount, int line){
+        if (argCount != arity){
+            throw new RuntimeError(line, "Expected " + arity + " arguments but got " + argCount + ".");
+        }
+    }
+
+    private void checkNumberOperands(Chunk chunk, int ip){
+        if (peek(0) instanceof Double && peek(1) instanceof Double) return;
+        throw new RuntimeError(chunk.lines[ip - 1], "Operands must be numbers.");
+    }
+
+    private static int readShort(byte[] code, int offset){
+        return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+    }
+
+    private void push(Object value){
+        if (stackTop == stack.length){
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop(){
+        return stack[--stackTop];
+    }
+
+    private Object peek(int distance){
+        return stack[stackTop - 1 - distance];
+    }
+}
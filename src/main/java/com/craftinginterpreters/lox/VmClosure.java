@@ -0,0 +1,47 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+public class VmClosure implements LoxMethod {
+    final VmFunction function;
+    final VmUpvalue[] upvalues;
+    final LoxInstance receiver;     // Set only on bound methods
+    private final VM vm;
+
+    VmClosure(VmFunction function, VmUpvalue[] upvalues, VM vm){
+        this(function, upvalues, null, vm);
+    }
+
+    private VmClosure(VmFunction function, VmUpvalue[] upvalues, LoxInstance receiver, VM vm){
+        this.function = function;
+        this.upvalues = upvalues;
+        this.receiver = receiver;
+        this.vm = vm;
+    }
+
+    @Override
+    public VmClosure bind(LoxInstance instance){
+        return new VmClosure(function, upvalues, instance, vm);
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    // Only used when called from outside the dispatch loop, e.g. by LoxClass. The VM calls closures inline.
+    @Override
+    public Object call(Engine engine, List<Object> arguments) {
+        return vm.call(this, receiver, arguments);
+    }
+
+    @Override
+    public Object invoke(Engine engine, LoxInstance receiver, List<Object> arguments) {
+        return vm.call(this, receiver, arguments);
+    }
+
+    @Override
+    public String toString(){
+        return function.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.craftinginterpreters.lox;
+
+// A function compiled by the bytecode Compiler. VmClosure pairs it with the upvalues it closes over.
+class VmFunction {
+    final Symbol name;      // null for top-level scripts
+    final int arity;
+    final boolean isInitializer;
+    final Chunk chunk = new Chunk();
+    int upvalueCount;       // Variables of enclosing functions it refers to, set once its body is compiled
+
+    VmFunction(Symbol name, int arity, boolean isInitializer){
+        this.name = name;
+        this.arity = arity;
+        this.isInitializer = isInitializer;
+    }
+
+    @Override
+    public String toString(){
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,17 @@
+package com.craftinginterpreters.lox;
+
+// A local variable captured by a VmClosure. While the variable's scope runs, the upvalue is open and the value stays
+// in the variable's VM stack slot. When the scope ends the VM closes it: the value moves into the upvalue, and the
+// closures that share it keep reading and writing it there.
+final class VmUpvalue {
+    static final int CLOSED = -1;
+
+    int slot;               // Absolute VM stack slot while open, CLOSED after
+    Object value;           // Only used once closed
+    VmUpvalue next;         // The next open upvalue, lower on the stack
+
+    VmUpvalue(int slot, VmUpvalue next){
+        this.slot = slot;
+        this.next = next;
+    }
+}
@@ -15,62 +15,95 @@ public class GenerateAst {
         }
         String outputDir = args[0];
 
+        // Fields after '|' are left out of the constructor and carry state filled in after parsing,
+        // such as the Resolver's results or the engines' inline caches. Children are arrays, not Lists.
+        // Every node gets an id from the Parser or AST cache reader that creates it, unique in the process, so side
+        // tables can key on it.
+        // Expressions also get visitors returning a primitive, so that a value needn't be boxed on its way up.
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
+                "static final int GLOBAL = -1"
+        ), Arrays.asList(
+                "boolean numeric;   // Can only produce a number, if it doesn't fail. Set by the Resolver"
+        ), Arrays.asList("double", "boolean"), Arrays.asList(
+                "Assign   : Token name, Expr value | int depth = GLOBAL, int slot",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
-                "Get      : Expr object, Token name",
+                "Call     : Expr callee, Token paren, Expr[] arguments",
+                "Get      : Expr object, Token name | final PropertyCache cache = new PropertyCache()",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
-                "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "Set      : Expr object, Token name, Expr value | final PropertyCache cache = new PropertyCache()",
+                "Super    : Token keyword, Token method | int depth = GLOBAL",
+                "This     : Token keyword | int depth = GLOBAL, int slot",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name | int depth = GLOBAL, int slot"
         ));
 
-        defineAst(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+        defineAst(outputDir, "Stmt", Arrays.asList(), Arrays.asList(), Arrays.asList(), Arrays.asList(
+                "Block      : Stmt[] statements | boolean scoped = true, int slots",
+                "Class      : Token name, Expr.Variable superclass, Stmt.Function[] methods | int slot = Expr.GLOBAL",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, Token[] params, Stmt[] body | int slot = Expr.GLOBAL, int frameSize",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
+                "Import     : Token keyword, Token path",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
+                "Var        : Token name, Expr initializer | int slot = Expr.GLOBAL",
                 "While      : Expr condition, Stmt body"
         ));
 
     }
-    private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException{
+    private static void defineAst(String outputDir, String baseName, List<String> constants, List<String> shared,
+                                  List<String> primitives, List<String> types) throws IOException{
 
         String path = outputDir + "/" + baseName + ".java";
         PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8);
 
-        // Package and imports
+        // Package
         writer.println("package com.craftinginterpreters.lox;");
-        writer.println();
-        writer.println("import java.util.List;");
 
         // Base class signature.
         writer.println();
         writer.println("abstract class " + baseName + " {");
 
-        // Visitor interface declaration.
+        // Constants shared by all the node types.
+        if (!constants.isEmpty()){
+            writer.println();
+            for (String constant : constants){
+                writer.println("    " + constant + ";");
+            }
+        }
+
+        // Fields shared by all the node types.
+        writer.println();
+        writer.println("    int id = -1;    // From NodeIds, or -1 for a node made outside the front end");
+        writer.println("    int line;       // Where the node starts in the source");
+        for (String field : shared){
+            writer.println("    " + field);
+        }
+
+        // Visitor interface declarations.
         writer.println();
         defineVisitor(writer, baseName, types);
+        for (String primitive : primitives){
+            writer.println();
+            definePrimitiveVisitor(writer, baseName, primitive, types);
+        }
 
-        // Base class abstract accept() method declaration.
+        // Base class abstract accept() method declarations.
         writer.println();
         writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        for (String primitive : primitives){
+            writer.println("    abstract " + primitive + " accept(" + capitalize(primitive) + "Visitor visitor);");
+        }
 
         // The AST classes.
         for (String type : types){
             writer.println();
             String className = type.split(":")[0].strip();
-            String fields = type.split(":")[1].strip();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String mutableFields = fields.length > 1 ? fields[1].strip() : null;
+            defineType(writer, baseName, className, fields[0].strip(), mutableFields, primitives);
         }
 
         writer.println("}");
@@ -88,7 +121,21 @@ public class GenerateAst {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    private static void definePrimitiveVisitor(PrintWriter writer, String baseName, String primitive,
+                                               List<String> types) {
+        String suffix = baseName + "As" + capitalize(primitive);
+        writer.println("    interface " + capitalize(primitive) + "Visitor {");
+
+        for (String type: types){
+            String typeName = type.split(":")[0].trim();
+            writer.println("        " + primitive + " visit" + typeName + suffix + "(" + typeName + " "
+                    + baseName.toLowerCase() + ");");
+        }
+        writer.println("    }");
+    }
+
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   String mutableFieldList, List<String> primitives) {
         String[] fields = fieldList.split(", ");
 
         // Class declaration
@@ -99,6 +146,11 @@ public class GenerateAst {
         for (String field : fields){
             writer.println("        final " + field + ";");
         }
+        if (mutableFieldList != null){
+            for (String field : mutableFieldList.split(", ")){
+                writer.println("        " + field + ";");
+            }
+        }
 
         // Constructor
         writer.println();
@@ -107,6 +159,16 @@ public class GenerateAst {
             String fieldName = field.split(" ")[1];
             writer.println("            this." + fieldName + " = " + fieldName + "; ");
         }
+        // A node starts where its first token or child does. The Parser sets the line of the others.
+        for (String field : fields){
+            String type = field.split(" ")[0];
+            if (type.equals("Token") || type.startsWith("Expr") || type.startsWith("Stmt")){
+                if (!type.endsWith("[]")){
+                    writer.println("            this.line = " + field.split(" ")[1] + ".line;");
+                }
+                break;
+            }
+        }
         writer.println("        }");
 
         // Abstract accept() method implementation (Visitor pattern).
@@ -115,7 +177,18 @@ public class GenerateAst {
         writer.println("        <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" + className + baseName +"(this);");
         writer.println("        }");
-
+        for (String primitive : primitives){
+            writer.println();
+            writer.println("        @Override");
+            writer.println("        " + primitive + " accept(" + capitalize(primitive) + "Visitor visitor) {");
+            writer.println("            return visitor.visit" + className + baseName + "As" + capitalize(primitive)
+                    + "(this);");
+            writer.println("        }");
+        }
         writer.println("    }");
     }
+
+    private static String capitalize(String name){
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
 }
@@ -0,0 +1,274 @@
+package com.craftinginterpreters.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Runs every .lox script under a directory that states its expected results, on each engine, and compares what the
+// interpreter prints with them. Scripts without expectations (e.g. modules that tests import) are skipped.
+//
+// Expectations are comments, as in the book's test suite:
+//   // expect: text                  a line of standard output
+//   // expect runtime error: text    the runtime error on this line, which ends the script with exit code 70
+//   // Error ...                     a compile error on this line, e.g. "// Error at ';': Expect expression."
+//   // [file line N] Error ...       a compile error reported exactly as written, for other files and lines
+//   // stdin: text                   a line of standard input
+//   // engines: vm                   runs the script only on the listed engines
+//   // repl                          feeds the script to the REPL as standard input instead of running the file,
+//                                    and expects the REPL to exit normally
+//   // edited from: file             runs the script with the Document test harness instead of the interpreter. It
+//                                    loads the file, an earlier version of the script in the same directory, then
+//                                    edits it into the script and runs that. The errors the earlier version reports
+//                                    come first, and are stated in it with '// Error ...' comments
+//
+// Each script runs in its own JVM, with its directory as the working directory and an empty AST cache. Then it runs
+// again on the same engine, so that its resolved syntax trees come from the cache.
+public class RunTests {
+    private static final List<String> ENGINES = List.of("tree", "closure", "vm");
+    private static final int MAX_MISMATCHES = 5;
+    // The interpreter runs from this tool's own class path, made absolute since each script has its own directory.
+    private static final String CLASS_PATH = Arrays.stream(
+                    System.getProperty("java.class.path").split(File.pathSeparator))
+            .map(entry -> Paths.get(entry).toAbsolutePath().toString())
+            .collect(Collectors.joining(File.pathSeparator));
+
+    private static final Pattern EXPECTED_OUTPUT = Pattern.compile("// expect: ?(.*)");
+    private static final Pattern EXPECTED_RUNTIME_ERROR = Pattern.compile("// expect runtime error: (.+)");
+    private static final Pattern EXPECTED_ERROR = Pattern.compile("// (Error.*)");
+    private static final Pattern EXPECTED_ERROR_LINE = Pattern.compile("// (\\[.*\\] Error.*)");
+    private static final Pattern STDIN = Pattern.compile("// stdin: ?(.*)");
+    private static final Pattern ENGINES_LINE = Pattern.compile("// engines: (.+)");
+    private static final Pattern REPL = Pattern.compile("// repl\\s*");
+    private static final Pattern EDITED_FROM = Pattern.compile("// edited from: (.+)");
+
+    public static void main(String[] args) throws Exception{
+        if (args.length > 1){
+            System.err.println("Usage: run_tests [test_directory]");
+            System.exit(64);
+        }
+        Path root = Paths.get(args.length == 1 ? args[0] : "src/test/resources");
+
+        List<Test> tests = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)){
+            for (Path file : files.filter(f -> f.toString().endsWith(".lox")).sorted().collect(Collectors.toList())){
+                Test test = Test.parse(file);
+                if (test != null) tests.add(test);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (Test test : tests){
+            results.add(pool.submit(test::run));
+        }
+
+        int passed = 0;
+        int failed = 0;
+        for (int i = 0; i < tests.size(); i++){
+            List<String> failures = results.get(i).get();
+            if (failures.isEmpty()){
+                passed++;
+            } else {
+                failed++;
+                System.out.println("FAIL " + root.relativize(tests.get(i).file));
+                for (String failure : failures) System.out.println("     " + failure);
+            }
+        }
+        pool.shutdown();
+
+        System.out.println("Passed " + passed + " of " + (passed + failed) + " tests.");
+        if (failed > 0) System.exit(1);
+    }
+
+    private static class Test {
+        final Path file;
+        final List<String> output = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final List<String> input = new ArrayList<>();
+        List<String> engines = ENGINES;
+        boolean repl = false;
+        String earlier = null;      // The earlier version's file name, for a script run as an edit of it
+        int expectedExitCode = 0;
+
+        private Test(Path file){
+            this.file = file;
+        }
+
+        // Returns null when the file has no expectations.
+        static Test parse(Path file) throws IOException{
+            Test test = new Test(file);
+            boolean expectsSomething = false;
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (int i = 0; i < lines.size(); i++){
+                String line = lines.get(i);
+                int lineNumber = i + 1;
+                Matcher match;
+                if ((match = EXPECTED_OUTPUT.matcher(line)).find()){
+                    test.output.add(match.group(1));
+                    expectsSomething = true;
+                } else if ((match = EXPECTED_RUNTIME_ERROR.matcher(line)).find()){
+                    test.errors.add(match.group(1));
+                    test.errors.add("[line" + lineNumber + "]");
+                    test.expectedExitCode = 70;
+                    expectsSomething = true;
+                } else if ((match = EXPECTED_ERROR_LINE.matcher(line)).find()){
+                    test.errors.add(match.group(1));
+                    test.expectedExitCode = 65;
+                    expectsSomething = true;
+                } else if ((match = EXPECTED_ERROR.matcher(line)).find()){
+                    test.errors.add("[line " + lineNumber + "] " + match.group(1));
+                    test.expectedExitCode = 65;
+                    expectsSomething = true;
+                } else if ((match = STDIN.matcher(line)).find()){
+                    test.input.add(match.group(1));
+                } else if ((match = ENGINES_LINE.matcher(line)).find()){
+                    test.engines = Arrays.asList(match.group(1).trim().split("\\s*,\\s*|\\s+"));
+                } else if (REPL.matcher(line).matches()){
+                    test.repl = true;
+                } else if ((match = EDITED_FROM.matcher(line)).find()){
+                    test.earlier = match.group(1).trim();
+                }
+            }
+            if (test.earlier != null){
+                List<String> earlierErrors = new ArrayList<>();
+                List<String> earlierLines = Files.readAllLines(file.resolveSibling(test.earlier),
+                        StandardCharsets.UTF_8);
+                for (int i = 0; i < earlierLines.size(); i++){
+                    Matcher match = EXPECTED_ERROR.matcher(earlierLines.get(i));
+                    if (match.find()) earlierErrors.add("[line " + (i + 1) + "] " + match.group(1));
+                }
+                test.errors.addAll(0, earlierErrors);
+            }
+            // The REPL reports errors and carries on, whatever they were.
+            if (test.repl) test.expectedExitCode = 0;
+            return expectsSomething ? test : null;
+        }
+
+        List<String> run() throws IOException, InterruptedException{
+            List<String> failures = new ArrayList<>();
+            for (String engine : engines){
+                Path scratch = Files.createTempDirectory("jlox-test");
+                try {
+                    check(engine, engine, scratch, failures);
+                    // Neither the REPL nor an edited document goes through the AST cache.
+                    if (repl || earlier != null) continue;
+                    // A file the front end accepted is in the cache now, unless the cache failed to store it.
+                    if (expectedExitCode != 65 && isEmpty(scratch.resolve("cache"))){
+                        failures.add("[" + engine + "] Nothing was stored in the AST cache.");
+                    }
+                    check(engine, engine + ", from the AST cache", scratch, failures);
+                } finally {
+                    deleteTree(scratch);
+                }
+            }
+            return failures;
+        }
+
+        // Runs the script once, with its cache, standard input and error output in the scratch directory.
+        private void check(String engine, String run, Path scratch, List<String> failures)
+                throws IOException, InterruptedException{
+            String main = earlier != null ? "com.craftinginterpreters.lox.DocumentHarness"
+                    : "com.craftinginterpreters.lox.Lox";
+            List<String> command = new ArrayList<>(List.of(
+                    Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", CLASS_PATH, main, "--engine=" + engine));
+            if (earlier != null) command.add(earlier);
+            if (!repl) command.add(file.getFileName().toString());
+
+            Path stdin = scratch.resolve("stdin");
+            Path stderr = scratch.resolve("stderr");
+            if (repl){
+                Files.copy(file, stdin, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.write(stdin, input, StandardCharsets.UTF_8);
+            }
+
+            ProcessBuilder builder = new ProcessBuilder(command)
+                    .directory(file.toAbsolutePath().getParent().toFile())
+                    .redirectInput(stdin.toFile())
+                    .redirectError(stderr.toFile());
+            builder.environment().put("JLOX_CACHE_DIR", scratch.resolve("cache").toString());
+            Process process = builder.start();
+
+            String stdout = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(60, TimeUnit.SECONDS)){
+                process.destroyForcibly();
+                failures.add("[" + run + "] Timed out.");
+                return;
+            }
+            // The REPL prompts before every line it reads.
+            if (repl) stdout = stdout.replace("> ", "");
+
+            compare(run, "output", output, lines(stdout), failures);
+            compare(run, "error", errors, Files.readAllLines(stderr, StandardCharsets.UTF_8), failures);
+            if (process.exitValue() != expectedExitCode){
+                failures.add("[" + run + "] Expected exit code " + expectedExitCode + " but got "
+                        + process.exitValue() + ".");
+            }
+        }
+
+        // Reports at most MAX_MISMATCHES differences, since a crash can print a long stack trace.
+        private static void compare(String run, String kind, List<String> expected, List<String> actual,
+                                    List<String> failures){
+            int mismatches = 0;
+            for (int i = 0; i < Math.max(expected.size(), actual.size()); i++){
+                String failure;
+                if (i >= actual.size()){
+                    failure = "Missing expected " + kind + " '" + expected.get(i) + "'.";
+                } else if (i >= expected.size()){
+                    failure = "Unexpected " + kind + " '" + actual.get(i) + "'.";
+                } else if (!expected.get(i).equals(actual.get(i))){
+                    failure = "Expected " + kind + " '" + expected.get(i) + "' but got '" + actual.get(i) + "'.";
+                } else {
+                    continue;
+                }
+                if (++mismatches > MAX_MISMATCHES){
+                    failures.add("[" + run + "] ...");
+                    return;
+                }
+                failures.add("[" + run + "] " + failure);
+            }
+        }
+
+        private static List<String> lines(String text){
+            List<String> lines = new ArrayList<>(Arrays.asList(text.split("\r?\n", -1)));
+            // The last line ends with a newline, which doesn't start another one.
+            if (lines.get(lines.size() - 1).isEmpty()) lines.remove(lines.size() - 1);
+            return lines;
+        }
+
+        private static boolean isEmpty(Path directory) throws IOException{
+            if (!Files.isDirectory(directory)) return true;
+            try (Stream<Path> files = Files.list(directory)){
+                return files.noneMatch(file -> file.toString().endsWith(".ast"));
+            }
+        }
+
+        private static void deleteTree(Path directory) throws IOException{
+            try (Stream<Path> paths = Files.walk(directory)){
+                for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())){
+                    Files.deleteIfExists(path);
+                }
+            } catch (UncheckedIOException e){
+                throw e.getCause();
+            }
+        }
+    }
+}